@@ -1,6 +1,10 @@
 package main;
 
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 // Litao Chen		2017.06.02
 // Terminal version of MineSweeper game 
@@ -28,9 +32,16 @@ public class Board {
 	// switch of auto-solving by AI (if safe spot was found)
 	boolean autoSolve = false;
 	
+	// no printing at all, for headless runs
+	boolean quiet = false;
+	
+	// time budget (ms) of the lookahead guess when no safe spot was found. 0 to turn it off.
+	// default can be given with -Dlookahead=<ms>
+	int lookaheadBudget = Integer.getInteger("lookahead", 0);
+	
 	// marks for mines and flags
-	private static final char MINE = '#';
-	private static final char FLAG = '&';
+	static final char MINE = '#';
+	static final char FLAG = '&';
 	
 	//settings of each difficulty level: rows, columns, number of mines.
 	// row 0 for easy; row 1 for hard; row 3 for expert
@@ -52,23 +63,87 @@ public class Board {
 	
 	// variables for checking and AI
 	private int spotsLeft;
+	private int mines;
+	private Random random;  // for mine positions
 	private int[] safeSpot = {999, 999, 100};  // [row, column, probability]
+	private boolean lookaheadGuess;  // the safe spot is a guess picked by the lookahead
+	private int[] exportChanged;  // spots (row * columns + column) changed since the last exportSpots
+	private int exportCount;     // of them, -1 if there were too many and all spots are copied again
+	
+	// the AI runs on a copy of the AI board in background after each move, so the player never waits for it.
+	// a new move drops the unfinished evaluation of the previous move and starts a new one.
+	// the deductions are recursive and can follow a long frontier, so the threads get a big stack
+	private static final ExecutorService aiWorker = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(null, r, "AI", 64L << 20);
+		t.setDaemon(true);
+		return t;
+	});
+	private Future<Board> pendingAI;
 	
 	//constructor
 	public Board(int level){
+		random = new Random();
+		initBoard(level);
+	}
+	
+	// board with mine positions from a seed, the same seed always gives the same games
+	public Board(int level, long seed){
+		random = new Random(seed);
 		initBoard(level);
 	}
 	
+	// for boards keeping the spots in their own way
+	Board() {
+	}
+	
+	// board with only the AI part, to run the AI on a part of a bigger board
+	Board(int[][][] aiBoard, int mines) {
+		boardForAI = aiBoard;
+		this.mines = mines;
+	}
+	
+	// board of any size with the mines at the given spots, for small test boards
+	Board(boolean[][] mineMap) {
+		if(mineMap.length < 2 || mineMap[0].length < 2)
+			throw new IllegalArgumentException("Board must be at least 2X2");
+		boardForAI = new int[mineMap.length][mineMap[0].length][4];
+		initAIBoard(0);  // only the size of the AI board is used
+		selectedBoard = new int[mineMap.length][mineMap[0].length][4];
+		for(int i = 0; i < mineMap.length; i++)
+			for(int j = 0; j < mineMap[0].length; j++)
+				if(mineMap[i][j]) {
+					selectedBoard[i][j][0] = 1;
+					mines++;
+				}
+		spotsLeft = mineMap.length * mineMap[0].length - mines;
+		setHints();
+	}
+	
+	// copy constructor for speculative evaluation, only the AI part is copied
+	private Board(Board other) {
+		boardForAI = new int[other.boardForAI.length][other.boardForAI[0].length][];
+		for(int i = 0; i < boardForAI.length; i++)
+			for(int j = 0; j < boardForAI[0].length; j++)
+				boardForAI[i][j] = other.boardForAI[i][j].clone();
+		mines = other.mines;
+		safeSpot = other.safeSpot.clone();
+		lookaheadGuess = other.lookaheadGuess;
+		lookaheadBudget = other.lookaheadBudget;
+	}
+	
 	
 	// initiate the main board and AI board
 	// The difference between this board and main board is it only record the hints for visited position
 	// The board will be updated along with the main board with the above rule
 	// here we simply set up a empty board as the starting point since no visited spot	
 	void initBoard(int level) {
+		cancelAI();  // evaluation of the old game is no longer needed
+		exportChanged = null;
 		boardForAI = new int[levels[level][0]][levels[level][1]][4];
 		initAIBoard(level);
 		selectedBoard = new int[levels[level][0]][levels[level][1]][4];
-		spotsLeft = selectedBoard.length * selectedBoard[0].length - levels[level][2];
+		mines = levels[level][2];
+		spotsLeft = selectedBoard.length * selectedBoard[0].length - mines;
 		setMines(level);
 		setHints();
 		
@@ -100,7 +175,7 @@ public class Board {
 		int totalMines = levels[level][2];
 		// shuffle the position of the mines
 		final int[] minesPos = 
-				new Random().ints(0, totalPos).distinct().limit(totalMines).toArray();
+				random.ints(0, totalPos).distinct().limit(totalMines).toArray();
 		
 		// set the mines in the board	
 		int columns = selectedBoard[0].length;
@@ -148,6 +223,10 @@ public class Board {
 	// mode: 0 for normal, 1 for solution after game over or win, 
 	// 2 for printing AIBoard and suggest next move.
 	void printBoard(int mode) {
+		if(quiet)
+			return;
+		if(mode == 2)
+			awaitAI();  // need the latest evaluation
 		int[][][] boardToPrint = (mode == 2)? boardForAI : selectedBoard;
 
 		if(mode == 2)
@@ -232,7 +311,7 @@ public class Board {
 	// 1: 	win
 	// 2:	game over
 	int updateBoard(int rowIndex, int colIndex, int isFlag) {
-		if(rowIndex >= selectedBoard.length || colIndex >= selectedBoard[0].length)
+		if(rowIndex < 0 || colIndex < 0 || rowIndex >= selectedBoard.length || colIndex >= selectedBoard[0].length)
 			return -1;
 		
 		if(isFlag == 0) {  //user open the spot
@@ -247,17 +326,21 @@ public class Board {
 				return 1;
 			}
 		}
-		else // user want to flag / unflag this spot as a mine
+		else { // user want to flag / unflag this spot as a mine
 			selectedBoard[rowIndex][colIndex][3] = 
 						(selectedBoard[rowIndex][colIndex][3] == 1)? 0 : 1;  // update flag
+			markExport(rowIndex, colIndex);
+		}
 		printBoard(0);
 		
-		resetRisk();  // prepared for next round of AI risk evaluation.
-		AI();
+		startAI();
 		
-		if(autoSolve && safeSpot[2] == 0) {  // auto-solve is on and it is safe to make the move
-			printBoard(2);   									// show evaluation and suggestion
-			return updateBoard(safeSpot[0], safeSpot[1], 0);	// and take next move		
+		if(autoSolve) {
+			awaitAI();
+			if(safeSpot[2] == 0) {  // auto-solve is on and it is safe to make the move
+				printBoard(2);   									// show evaluation and suggestion
+				return updateBoard(safeSpot[0], safeSpot[1], 0);	// and take next move		
+			}
 		}
 
 		return 0;
@@ -314,12 +397,108 @@ public class Board {
 			return;
 		boardForAI[rowIndex][colIndex][1] = selectedBoard[rowIndex][colIndex][1] = 1;  //mark as visited	
 		boardForAI[rowIndex][colIndex][2] = selectedBoard[rowIndex][colIndex][2]; //copy the hint
+		markExport(rowIndex, colIndex);
 		updateBlindSpotsNum(rowIndex, colIndex);
 		spotsLeft--;
 		safeZone(rowIndex, colIndex);		
 	}
 	
 	
+	// full evaluation after each move: AI deduction, then lookahead guess if no safe spot was found
+	void evaluate() {
+		resetRisk();  // prepared for next round of AI risk evaluation.
+		AI();
+		lookaheadGuess = false;
+		
+		if(lookaheadBudget > 0 && safeSpot[2] != 0) {
+			int[] guess = Lookahead.select(this, lookaheadBudget);
+			if(guess != null) {
+				// a guess is never sure, even if the average risk rounds down to 0
+				guess[2] = Math.max(guess[2], 1);
+				safeSpot = guess;
+				lookaheadGuess = true;
+			}
+		}
+	}
+	
+	// start the evaluation of current board in background.
+	// the finished result of the last move is kept (its 0 and 100 risks are used as known facts),
+	// an unfinished one is cancelled and done again on the new board.
+	void startAI() {
+		if(pendingAI != null) {
+			if(pendingAI.isDone())
+				awaitAI();
+			else
+				pendingAI.cancel(true);
+			pendingAI = null;
+		}
+		
+		Board copy = snapshotForAI();
+		if(copy == null)  // nothing to evaluate
+			return;
+		pendingAI = aiWorker.submit(() -> {
+			copy.evaluate();
+			return copy;
+		});
+	}
+	
+	// wait for the latest evaluation if it is not finished, and take its risks and safe spot
+	void awaitAI() {
+		if(pendingAI == null)  // no new move since last time
+			return;
+		
+		Board result;
+		try {
+			result = pendingAI.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch(ExecutionException e) {
+			throw new IllegalStateException("AI evaluation failed", e.getCause());
+		}
+		pendingAI = null;
+		absorbAI(result);
+	}
+	
+	// drop the evaluation in progress and the last suggestion
+	void cancelAI() {
+		if(pendingAI != null)
+			pendingAI.cancel(true);
+		pendingAI = null;
+		safeSpot = new int[] {999, 999, 100};
+		lookaheadGuess = false;
+	}
+	
+	// copy of the AI board for the background evaluation
+	Board snapshotForAI() {
+		return new Board(this);
+	}
+	
+	// take the risks and safe spot from a finished evaluation
+	void absorbAI(Board result) {
+		// opening spots does not touch the risk, so only the risk is copied back
+		for(int i = 0; i < boardForAI.length; i++)
+			for(int j = 0; j < boardForAI[0].length; j++)
+				if(boardForAI[i][j][0] != result.boardForAI[i][j][0]) {
+					boardForAI[i][j][0] = result.boardForAI[i][j][0];
+					markExport(i, j);
+				}
+		safeSpot = result.safeSpot;
+		lookaheadGuess = result.lookaheadGuess;
+	}
+	
+	// open a spot on a copy of the AI board with an assumed hint and let the AI run on it.
+	// used by the lookahead to see what a guess could unlock
+	Board speculate(int rowIndex, int colIndex, int hint) {
+		Board next = new Board(this);
+		next.boardForAI[rowIndex][colIndex][1] = 1;
+		next.boardForAI[rowIndex][colIndex][2] = hint;
+		next.updateBlindSpotsNum(rowIndex, colIndex);
+		next.resetRisk();
+		next.AI();
+		return next;
+	}
+	
 	// AI function to decide next move. 
 	// It marks mine or safe spot and evaluate possible risks of unopened spot as suggestion.
 	void AI() {
@@ -623,7 +802,7 @@ public class Board {
 	// suggest next step
 	void nextStep() {
 		if( safeSpot[2] != 0 ) {  // not 100% safe
-			if(safeSpot[2] > 20)  // based on experience
+			if(safeSpot[2] > 20 && !lookaheadGuess)  // based on experience
 				System.out.println("Not sure which spot is safe. Good luck!");
 			else
 				System.out.printf("The spot:%d-%d, might be safe, "
@@ -643,4 +822,125 @@ public class Board {
 		System.out.printf("Auto-solve is: %s\n", status);
 	}
 	
+	// set the lookahead time budget, 0 to turn it off
+	void setLookahead(int budget) {
+		lookaheadBudget = budget;
+		if(budget == 0)
+			System.out.println("Lookahead is: off");
+		else
+			System.out.printf("Lookahead is: on, %d ms per move\n", budget);
+	}
+	
+	// number of difficulty levels
+	static int levelCount() {
+		return levels.length;
+	}
+	
+	// current suggestion: [row, column, risk]
+	int[] getSafeSpot() {
+		return safeSpot.clone();
+	}
+	
+	// guess: the spot was picked by the lookahead
+	void setSafeSpot(int[] spot, boolean guess) {
+		safeSpot = spot;
+		lookaheadGuess = guess;
+	}
+	
+	boolean isLookaheadGuess() {
+		return lookaheadGuess;
+	}
+	
+	// accessors used by the lookahead
+	int rows() {
+		return boardForAI.length;
+	}
+	
+	int columns() {
+		return boardForAI[0].length;
+	}
+	
+	int getMines() {
+		return mines;
+	}
+	
+	boolean isVisited(int rowIndex, int colIndex) {
+		return boardForAI[rowIndex][colIndex][1] == 1;
+	}
+	
+	int getRisk(int rowIndex, int colIndex) {
+		return boardForAI[rowIndex][colIndex][0];
+	}
+	
+	// accessors used by ReferenceBoard checks
+	boolean isMine(int rowIndex, int colIndex) {
+		return selectedBoard[rowIndex][colIndex][0] == 1;
+	}
+	
+	boolean isFlagged(int rowIndex, int colIndex) {
+		return selectedBoard[rowIndex][colIndex][3] == 1;
+	}
+	
+	// number of mines around a spot
+	int getHint(int rowIndex, int colIndex) {
+		return selectedBoard[rowIndex][colIndex][2];
+	}
+	
+	// hint as copied to the AI board when the spot was opened
+	int getAIHint(int rowIndex, int colIndex) {
+		return boardForAI[rowIndex][colIndex][2];
+	}
+	
+	int getBlindSpots(int rowIndex, int colIndex) {
+		return boardForAI[rowIndex][colIndex][3];
+	}
+	
+	int getSpotsLeft() {
+		return spotsLeft;
+	}
+	
+	// the spot has to be copied again by the next exportSpots
+	private void markExport(int rowIndex, int colIndex) {
+		if(exportChanged == null || exportCount < 0)
+			return;
+		if(exportCount == exportChanged.length)
+			exportCount = -1;
+		else
+			exportChanged[exportCount++] = rowIndex * boardForAI[0].length + colIndex;
+	}
+	
+	// copy the board for DecisionExporter, two bytes per spot row by row: the spot as the player sees it
+	// (hint, or unvisited / flagged, plus MINE_BIT if it is a mine) and the risk from AI.
+	// all: copy every spot, else only the spots changed since the last call (out still holds the others)
+	void exportSpots(byte[] out, boolean all) {
+		int columns = boardForAI[0].length;
+		if(exportChanged == null) {
+			exportChanged = new int[boardForAI.length * columns];
+			all = true;
+		}
+		if(all || exportCount < 0) {
+			for(int i = 0; i < boardForAI.length; i++)
+				for(int j = 0; j < columns; j++)
+					exportSpot(out, i, j);
+		}
+		else {
+			for(int k = 0; k < exportCount; k++)
+				exportSpot(out, exportChanged[k] / columns, exportChanged[k] % columns);
+		}
+		exportCount = 0;
+	}
+	
+	private void exportSpot(byte[] out, int rowIndex, int colIndex) {
+		int[] ai = boardForAI[rowIndex][colIndex];
+		int[] spot = selectedBoard[rowIndex][colIndex];
+		int code;
+		if(ai[1] == 1)  // visited
+			code = ai[2];
+		else
+			code = (spot[3] == 1) ? DecisionExporter.FLAGGED : DecisionExporter.UNVISITED;
+		int pos = 2 * (rowIndex * boardForAI[0].length + colIndex);
+		out[pos] = (byte) (code | spot[0] * DecisionExporter.MINE_BIT);
+		out[pos + 1] = (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, ai[0]));  // cut, not wrapped
+	}
+	
 }
@@ -0,0 +1,548 @@
+package main;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// ***************************************************************************************************************
+// Infinite board. Nothing is set up front, the board is cut into chunks of 64X64 spots:
+// - the mines of a chunk come from the seed and the chunk position, so they are the same every time.
+// - a chunk is created (mines + hints) when a spot in it is first opened, flagged or marked by the AI.
+//   chunks that were never touched take no memory, their mines are generated again when needed.
+// - chunks are kept in a hash map with long keys (no boxing).
+// - when all spots without mine in a chunk are opened, the chunk only keeps its mines and flags.
+// - the AI runs on a normal AI board cut out around the spots the last move opened (WINDOW_MARGIN more at
+//   each side, at most MAX_WINDOW wide), so it goes over chunk borders without knowing about them and
+//   its cost does not grow with the explored area. Risks are kept in the chunks, safe spots found
+//   earlier outside the window are kept on a stack for the next suggestions.
+// Coordinates can be any int, including negative ones. The game is lost on a mine and can not be won.
+// There is no fixed size and no AI board of the whole board, so the size, spots left and export accessors
+// of Board throw IllegalStateException: SolverHarness and DecisionExporter can not use this board.
+// **************************************************************************************************************
+
+class ChunkedBoard extends Board {
+	private static final int SHIFT = 6;
+	static final int SIZE = 1 << SHIFT;  // 64 X 64 spots per chunk
+	private static final int MASK = SIZE - 1;
+
+	// part of the board printed in terminal, around the last move
+	private static final int VIEW_ROWS = 16;
+	private static final int VIEW_COLUMNS = 30;
+
+	// board cut out for the AI: spots around what the last move opened, and the most rows / columns
+	private static final int WINDOW_MARGIN = 16;
+	private static final int MAX_WINDOW = 128;
+
+	// default mine density, the same as hard level
+	static final double DENSITY = 40.0 / 256;
+
+	// one chunk of the board. mines, visits and flags are one bit per spot, one long per row
+	static class Chunk {
+		final long[] mines;
+		long[] visited = new long[SIZE];
+		long[] flags = new long[SIZE];
+		byte[] hints = new byte[SIZE * SIZE];
+		byte[] risk = new byte[SIZE * SIZE];  // risk evaluated by AI, -1 if not evaluated
+		int closed;  // spots without mine not opened yet
+
+		Chunk(long[] mines) {
+			this.mines = mines;
+			int count = 0;
+			for(long row : mines)
+				count += Long.bitCount(row);
+			closed = SIZE * SIZE - count;
+			Arrays.fill(risk, (byte) -1);
+		}
+
+		// all spots without mine are opened, only the mines are kept
+		boolean isResolved() {
+			return visited == null;
+		}
+
+		void resolve() {
+			visited = null;
+			hints = null;
+			risk = null;
+		}
+	}
+
+	// hash map from chunk key to chunk, open addressing with linear probing
+	static class ChunkMap {
+		private long[] keys = new long[64];
+		private Chunk[] values = new Chunk[64];
+		private int size;
+
+		Chunk get(long key) {
+			for(int i = slot(key, keys.length); values[i] != null; i = (i + 1) & (keys.length - 1))
+				if(keys[i] == key)
+					return values[i];
+			return null;
+		}
+
+		void put(long key, Chunk chunk) {
+			if((size + 1) * 2 > keys.length)
+				grow();
+			int i = slot(key, keys.length);
+			while(values[i] != null && keys[i] != key)
+				i = (i + 1) & (keys.length - 1);
+			if(values[i] == null)
+				size++;
+			keys[i] = key;
+			values[i] = chunk;
+		}
+
+		int size() {
+			return size;
+		}
+
+		Chunk[] values() {
+			Chunk[] result = new Chunk[size];
+			int pos = 0;
+			for(Chunk chunk : values)
+				if(chunk != null)
+					result[pos++] = chunk;
+			return result;
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			Chunk[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new Chunk[oldValues.length * 2];
+			size = 0;
+			for(int i = 0; i < oldKeys.length; i++)
+				if(oldValues[i] != null)
+					put(oldKeys[i], oldValues[i]);
+		}
+
+		private static int slot(long key, int length) {
+			return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & (length - 1);
+		}
+	}
+
+	private final double density;
+	private final int minesPerChunk;
+	private final long seed;
+	private final ChunkMap chunks = new ChunkMap();
+
+	// last chunk found, most lookups hit the same chunk again
+	private long lastKey;
+	private Chunk lastChunk;
+
+	private int opened;
+	private boolean anyOpened;
+	private int lastRow, lastCol;  // last move, center of the view
+	private int moveTop, moveBottom, moveLeft, moveRight;  // spots touched by the last move
+
+	// safe spots found by the AI, to suggest when the current window has none
+	private long[] safeSpots = new long[16];
+	private int safeCount;
+
+	// top left spot of the board cut out for the AI
+	private int originRow, originCol;
+
+	ChunkedBoard(long seed) {
+		this(seed, DENSITY);
+	}
+
+	ChunkedBoard(long seed, double density) {
+		this.density = density;
+		minesPerChunk = (int) Math.round(density * SIZE * SIZE);
+		this.seed = seed;
+	}
+
+	// update the board with user's input, same return values as Board
+	@Override
+	int updateBoard(int rowIndex, int colIndex, int isFlag) {
+		while(true) {
+			moveTop = moveBottom = rowIndex;
+			moveLeft = moveRight = colIndex;
+			if(isFlag == 0) {  //user open the spot
+				if(isMine(rowIndex, colIndex)) {  // hit a mine, game over
+					lastRow = rowIndex;
+					lastCol = colIndex;
+					printBoard(1);
+					return 2;
+				}
+				openSpot(rowIndex, colIndex);
+			}
+			else  // user want to flag / unflag this spot as a mine
+				chunk(rowIndex, colIndex).flags[rowIndex & MASK] ^= 1L << (colIndex & MASK);
+			lastRow = rowIndex;
+			lastCol = colIndex;
+			printBoard(0);
+
+			startAI();
+			if(!autoSolve)
+				return 0;
+			awaitAI();
+			int[] spot = getSafeSpot();
+			if(spot[2] != 0)  // no safe move
+				return 0;
+			printBoard(2);  // show evaluation and suggestion, and take next move
+			rowIndex = spot[0];
+			colIndex = spot[1];
+			isFlag = 0;
+		}
+	}
+
+	// open the spot, and the spots around it if it is safe zone (hint = 0).
+	// a stack instead of recursion, the safe zone can be big on an infinite board
+	void openSpot(int rowIndex, int colIndex) {
+		long[] stack = new long[64];
+		int top = 0;
+		stack[top++] = pack(rowIndex, colIndex);
+
+		while(top > 0) {
+			long spot = stack[--top];
+			int row = (int) (spot >> 32);
+			int col = (int) spot;
+			Chunk chunk = chunk(row, col);
+			if(isVisited(chunk, row, col))
+				continue;
+
+			chunk.visited[row & MASK] |= 1L << (col & MASK);
+			int hint = chunk.hints[((row & MASK) << SHIFT) | (col & MASK)];
+			opened++;
+			markOpened(row, col);
+			if(--chunk.closed == 0)
+				chunk.resolve();
+
+			if(hint != 0)  // not safe zone
+				continue;
+			for(int i = row-1; i <= row+1; i++) {
+				for(int j = col-1; j <= col+1; j++) {
+					if(i == row && j == col)
+						continue;
+					if(top == stack.length)
+						stack = Arrays.copyOf(stack, top * 2);
+					stack[top++] = pack(i, j);
+				}
+			}
+		}
+	}
+
+	// keep the area of the last move up to date
+	private void markOpened(int row, int col) {
+		anyOpened = true;
+		moveTop = Math.min(moveTop, row);
+		moveBottom = Math.max(moveBottom, row);
+		moveLeft = Math.min(moveLeft, col);
+		moveRight = Math.max(moveRight, col);
+	}
+
+	// cut out the spots around the last move as a normal AI board
+	@Override
+	Board snapshotForAI() {
+		if(!anyOpened)
+			return null;
+
+		int[] rowRange = window(moveTop, moveBottom, lastRow);
+		int[] colRange = window(moveLeft, moveRight, lastCol);
+		originRow = rowRange[0];
+		originCol = colRange[0];
+		int rows = rowRange[1];
+		int columns = colRange[1];
+
+		// visits with one more spot at each side, to count the unvisited spots around the border
+		boolean[][] visited = new boolean[rows + 2][columns + 2];
+		for(int i = 0; i < rows + 2; i++)
+			for(int j = 0; j < columns + 2; j++)
+				visited[i][j] = isVisited(originRow - 1 + i, originCol - 1 + j);
+
+		int[][][] aiBoard = new int[rows][columns][4];
+		int unknown = 0;
+		for(int i = 0; i < rows; i++) {
+			for(int j = 0; j < columns; j++) {
+				int row = originRow + i;
+				int col = originCol + j;
+				int blindSpots = 0;
+				for(int r = i; r <= i + 2; r++)
+					for(int c = j; c <= j + 2; c++)
+						if(!visited[r][c] && (r != i + 1 || c != j + 1))
+							blindSpots++;
+
+				aiBoard[i][j][0] = getRisk(row, col);
+				aiBoard[i][j][1] = visited[i+1][j+1] ? 1 : 0;
+				aiBoard[i][j][2] = visited[i+1][j+1] ? getHint(row, col) : 0;
+				aiBoard[i][j][3] = blindSpots;
+				if(!visited[i+1][j+1])
+					unknown++;
+			}
+		}
+
+		// opened spots have no mines, only the unknown ones count
+		Board window = new Board(aiBoard, (int) Math.round(density * unknown));
+		window.lookaheadBudget = lookaheadBudget;
+		return window;
+	}
+
+	// first spot and number of spots of the window in one direction: the spots the move touched and
+	// a margin, at most MAX_WINDOW around the move, and one spot away from the int range for the border
+	private static int[] window(int low, int high, int move) {
+		long from = Math.max((long) low - WINDOW_MARGIN, (long) move - MAX_WINDOW / 2);
+		long to = Math.min((long) high + WINDOW_MARGIN, from + MAX_WINDOW - 1);
+		from = Math.max(from, Integer.MIN_VALUE + 1L);
+		to = Math.min(to, Integer.MAX_VALUE - 1L);
+		return new int[] {(int) from, (int) (to - from + 1)};
+	}
+
+	// store the risks of the cut out board, the safe spot goes back to board coordinates
+	@Override
+	void absorbAI(Board result) {
+		for(int i = 0; i < result.rows(); i++) {
+			for(int j = 0; j < result.columns(); j++) {
+				int row = originRow + i;
+				int col = originCol + j;
+				if(result.isVisited(i, j))
+					continue;
+				int risk = result.getRisk(i, j);
+				Chunk chunk = (risk == -1) ? find(row, col) : chunk(row, col);
+				if(chunk == null || chunk.isResolved())
+					continue;
+				int pos = ((row & MASK) << SHIFT) | (col & MASK);
+				if(risk == 0 && chunk.risk[pos] != 0)  // new safe spot
+					pushSafeSpot(row, col);
+				chunk.risk[pos] = (byte) risk;
+			}
+		}
+
+		int[] spot = result.getSafeSpot();
+		if(spot[0] < result.rows() && spot[1] < result.columns())
+			spot = new int[] {originRow + spot[0], originCol + spot[1], spot[2]};
+		if(spot[2] != 0)  // a safe spot from an earlier window is better than any guess
+			spot = popSafeSpot(spot);
+		setSafeSpot(spot, spot[2] != 0 && result.isLookaheadGuess());
+	}
+
+	private void pushSafeSpot(int rowIndex, int colIndex) {
+		if(safeCount == safeSpots.length)
+			safeSpots = Arrays.copyOf(safeSpots, safeCount * 2);
+		safeSpots[safeCount++] = pack(rowIndex, colIndex);
+	}
+
+	// a stored safe spot still unopened, or the given suggestion if there is none
+	private int[] popSafeSpot(int[] suggestion) {
+		while(safeCount > 0) {
+			long spot = safeSpots[--safeCount];
+			int row = (int) (spot >> 32);
+			int col = (int) spot;
+			if(!isVisited(row, col) && getRisk(row, col) == 0) {
+				safeSpots[safeCount++] = spot;  // stays until it is opened
+				return new int[] {row, col, 0};
+			}
+		}
+		return suggestion;
+	}
+
+	// print the part of the board around the last move
+	// mode: 0 for normal, 1 for solution after game over, 2 for AI risk and suggestion
+	@Override
+	void printBoard(int mode) {
+		if(quiet)
+			return;
+		if(mode == 2) {
+			awaitAI();
+			System.out.println("Risk evaluation from AI:");
+		}
+
+		int top = lastRow - VIEW_ROWS / 2;
+		int left = lastCol - VIEW_COLUMNS / 2;
+		int[] chunkCount = getChunkCount();
+		System.out.printf("Spots opened: %d   Chunks: %d (%d resolved)\n", opened, chunkCount[0], chunkCount[1]);
+		System.out.print("        ");
+		for(int j = left; j < left + VIEW_COLUMNS; j++)
+			System.out.printf("%5d", j);
+		System.out.println();
+
+		for(int i = top; i < top + VIEW_ROWS; i++) {
+			System.out.printf("%6d |", i);
+			for(int j = left; j < left + VIEW_COLUMNS; j++)
+				System.out.printf("%5s", spotText(i, j, mode));
+			System.out.println();
+		}
+		if(mode == 2)
+			nextStep();
+	}
+
+	// text of one spot, '.' for unvisited
+	private String spotText(int rowIndex, int colIndex, int mode) {
+		if(isVisited(rowIndex, colIndex))
+			return (mode == 2) ? "_" + getHint(rowIndex, colIndex) + "_" : String.valueOf(getHint(rowIndex, colIndex));
+		if(mode == 1 && isMine(rowIndex, colIndex))
+			return String.valueOf(MINE);
+		if(mode == 2)
+			return String.valueOf(getRisk(rowIndex, colIndex));
+		if(isFlagged(rowIndex, colIndex))
+			return String.valueOf(FLAG);
+		return ".";
+	}
+
+	@Override
+	boolean isVisited(int rowIndex, int colIndex) {
+		Chunk chunk = find(rowIndex, colIndex);
+		return chunk != null && isVisited(chunk, rowIndex, colIndex);
+	}
+
+	private static boolean isVisited(Chunk chunk, int rowIndex, int colIndex) {
+		long[] bits = chunk.isResolved() ? chunk.mines : chunk.visited;
+		boolean set = (bits[rowIndex & MASK] >>> (colIndex & MASK) & 1) != 0;
+		return chunk.isResolved() ? !set : set;
+	}
+
+	@Override
+	int getRisk(int rowIndex, int colIndex) {
+		Chunk chunk = find(rowIndex, colIndex);
+		if(chunk == null || chunk.isResolved())
+			return -1;
+		return chunk.risk[((rowIndex & MASK) << SHIFT) | (colIndex & MASK)];
+	}
+
+	@Override
+	boolean isFlagged(int rowIndex, int colIndex) {
+		Chunk chunk = find(rowIndex, colIndex);
+		return chunk != null && (chunk.flags[rowIndex & MASK] >>> (colIndex & MASK) & 1) != 0;
+	}
+
+	@Override
+	boolean isMine(int rowIndex, int colIndex) {
+		long[] mines = mines(rowIndex >> SHIFT, colIndex >> SHIFT);
+		return (mines[rowIndex & MASK] >>> (colIndex & MASK) & 1) != 0;
+	}
+
+	// number of mines around a spot
+	@Override
+	int getHint(int rowIndex, int colIndex) {
+		Chunk chunk = find(rowIndex, colIndex);
+		if(chunk != null && !chunk.isResolved())
+			return chunk.hints[((rowIndex & MASK) << SHIFT) | (colIndex & MASK)];
+
+		int hint = 0;
+		for(int i = rowIndex-1; i <= rowIndex+1; i++)
+			for(int j = colIndex-1; j <= colIndex+1; j++)
+				if(isMine(i, j))
+					hint++;
+		return hint;
+	}
+
+	@Override
+	int rows() {
+		throw noFixedBoard();
+	}
+
+	@Override
+	int columns() {
+		throw noFixedBoard();
+	}
+
+	@Override
+	int getMines() {
+		throw noFixedBoard();
+	}
+
+	@Override
+	int getAIHint(int rowIndex, int colIndex) {
+		throw noFixedBoard();
+	}
+
+	@Override
+	int getBlindSpots(int rowIndex, int colIndex) {
+		throw noFixedBoard();
+	}
+
+	@Override
+	int getSpotsLeft() {
+		throw noFixedBoard();
+	}
+
+	@Override
+	void exportSpots(byte[] out, boolean all) {
+		throw noFixedBoard();
+	}
+
+	private static IllegalStateException noFixedBoard() {
+		return new IllegalStateException("The infinite board has no fixed size and no AI board of its own");
+	}
+
+	// number of chunks: [all, resolved]
+	int[] getChunkCount() {
+		int resolved = 0;
+		for(Chunk chunk : chunks.values())
+			if(chunk.isResolved())
+				resolved++;
+		return new int[] {chunks.size(), resolved};
+	}
+
+	// the chunk of a spot, null if it was never touched
+	private Chunk find(int rowIndex, int colIndex) {
+		long key = key(rowIndex >> SHIFT, colIndex >> SHIFT);
+		if(lastChunk != null && lastKey == key)
+			return lastChunk;
+		Chunk chunk = chunks.get(key);
+		if(chunk != null) {
+			lastKey = key;
+			lastChunk = chunk;
+		}
+		return chunk;
+	}
+
+	// the chunk of a spot, created if it was never touched
+	private Chunk chunk(int rowIndex, int colIndex) {
+		Chunk chunk = find(rowIndex, colIndex);
+		if(chunk == null) {
+			chunk = createChunk(rowIndex >> SHIFT, colIndex >> SHIFT);
+			long key = key(rowIndex >> SHIFT, colIndex >> SHIFT);
+			chunks.put(key, chunk);
+			lastKey = key;
+			lastChunk = chunk;
+		}
+		return chunk;
+	}
+
+	// set mines and hints of a new chunk. Hints on the border need the mines of the chunks around
+	private Chunk createChunk(int chunkRow, int chunkCol) {
+		long[][] around = new long[9][];
+		for(int i = -1; i <= 1; i++)
+			for(int j = -1; j <= 1; j++)
+				around[(i+1)*3 + j+1] = mines(chunkRow + i, chunkCol + j);
+
+		Chunk chunk = new Chunk(around[4]);
+		for(int row = 0; row < SIZE; row++) {
+			for(int col = 0; col < SIZE; col++) {
+				int hint = 0;
+				for(int i = row-1; i <= row+1; i++) {
+					for(int j = col-1; j <= col+1; j++) {
+						// which of the 9 chunks, and where in it
+						long[] mines = around[((i >> SHIFT) + 1)*3 + (j >> SHIFT) + 1];
+						hint += (int) (mines[i & MASK] >>> (j & MASK) & 1);
+					}
+				}
+				chunk.hints[(row << SHIFT) | col] = (byte) hint;
+			}
+		}
+		return chunk;
+	}
+
+	// mines of a chunk, generated again if the chunk was never touched
+	private long[] mines(int chunkRow, int chunkCol) {
+		long key = key(chunkRow, chunkCol);
+		Chunk chunk = (lastChunk != null && lastKey == key) ? lastChunk : chunks.get(key);
+		if(chunk != null)
+			return chunk.mines;
+
+		// shuffle the position of the mines, same as Board.setMines
+		SplittableRandom random = new SplittableRandom(seed ^ (key * 0x9E3779B97F4A7C15L));
+		int[] minesPos = random.ints(0, SIZE * SIZE).distinct().limit(minesPerChunk).toArray();
+		long[] mines = new long[SIZE];
+		for(int pos : minesPos)
+			mines[pos >> SHIFT] |= 1L << (pos & MASK);
+		return mines;
+	}
+
+	private static long key(int chunkRow, int chunkCol) {
+		return ((long) chunkRow << 32) | (chunkCol & 0xffffffffL);
+	}
+
+	private static long pack(int rowIndex, int colIndex) {
+		return ((long) rowIndex << 32) | (colIndex & 0xffffffffL);
+	}
+}
@@ -0,0 +1,595 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// ***************************************************************************************************************
+// Export of AI decisions for training move-ranking models.
+// At each decision point every frontier spot (unvisited, next to a visited spot) is one record:
+//   the 5X5 view around it, the risk from AI and if it really is a mine.
+// Basic idea:
+// - from one decision to the next only a few spots change (opened spots and new risks), so only the
+//   changed spots are stored. A game starts from an empty board, its first decision stores the mines.
+//   read() plays the changes back and gives the board of every decision, to cut the records out of.
+//   A game is dropped from memory after its last decision, so reading needs memory only for the games
+//   going on at the same time (one per game thread).
+// - main() reads a file back and counts the frontier records, or prints them as text.
+//
+// usage: java main.DecisionExporter decisions.bin [--dump 20]
+// - each game thread fills its own block, no lock between games. A full block goes to a single writer
+//   thread which puts it in columns, compresses it (deflate) and writes it to the file.
+// - blocks come from a fixed pool, so memory stays bounded: a game thread waits if all blocks are
+//   still being written.
+//
+// File format (little endian):
+//   header:  "MSDX", int version (2), int view size (5)
+//   blocks:  int games, int decisions, int changes, int raw length, int compressed length, compressed bytes
+//   raw block, one column after another:
+//     games:      int game, long seed, byte level, byte strategy, byte ended (1 if the last decision
+//                 of the game is in this block), short rows, short columns,
+//                 int decisions of the game in this block (a game goes on over the blocks of its thread)
+//     decisions:  short move, short changed spots since the last decision of the game, game by game
+//     changes:    byte code (view code + 16 if mine), byte risk, and at the end the changed spots
+//                 (row * columns + column) in rising order per decision: byte gap to the last changed spot,
+//                 or 255 and short spot for a big gap
+//   view code: 0-8 hint of visited spot, 9 unvisited, 10 flagged, 11 outside the board
+//   risk: -1 not evaluated. Guesses of the AI can be below 0 or above 100, they are cut to -128 - 127
+//   a game starts with all spots unvisited, no mines and risk -1
+// **************************************************************************************************************
+
+class DecisionExporter implements Closeable {
+	static final int VERSION = 3;
+	static final int VIEW = 5;  // 5X5 spots around the frontier spot
+	static final byte UNVISITED = 9;
+	static final byte FLAGGED = 10;
+	static final byte OUTSIDE = 11;
+
+	static final int MINE_BIT = 16;  // in the code of a spot
+
+	// bytes in the raw block
+	private static final int GAME_SIZE = 4 + 8 + 1 + 1 + 1 + 2 + 2 + 4;
+	private static final int DECISION_SIZE = 2 + 2;
+	private static final int CHANGE_SIZE = 1 + 1 + 3;  // at most
+	private static final int BIG_GAP = 255;
+
+	// decisions of one game thread
+	private static class Block {
+		final int[] game;  // games with decisions in this block
+		final long[] seed;
+		final byte[] level, strategy, ended;
+		final short[] rows, columns;
+		final int[] gameDecisions;
+		final short[] move, changes;
+		final short[] spot;
+		final byte[] code, risk;
+		int games;
+		int decisions;
+		int used;  // changes
+
+		Block(int maxDecisions, int maxChanges) {
+			game = new int[maxDecisions];
+			seed = new long[maxDecisions];
+			level = new byte[maxDecisions];
+			strategy = new byte[maxDecisions];
+			ended = new byte[maxDecisions];
+			rows = new short[maxDecisions];
+			columns = new short[maxDecisions];
+			gameDecisions = new int[maxDecisions];
+			move = new short[maxDecisions];
+			changes = new short[maxDecisions];
+			spot = new short[maxChanges];
+			code = new byte[maxChanges];
+			risk = new byte[maxChanges];
+		}
+	}
+
+	// state of one game thread: its block, and the spots of its last decision to find the changes
+	private static class Recorder {
+		Block block;
+		Board board;  // board of the last decision, a new board is a new game
+		int game;
+		byte[] spots = new byte[0];  // Board.exportSpots of this decision
+		byte[] last = new byte[0];   // and of the last decision
+	}
+
+	private final int maxDecisions, maxChanges;
+	private final FileChannel channel;
+
+	private final ThreadLocal<Recorder> recorder;
+	private final List<Recorder> recorders = new ArrayList<>();
+	private final BlockingQueue<Block> free;
+	private final BlockingQueue<Block> full;
+	private final AtomicInteger blocks = new AtomicInteger();  // blocks created so far
+	private final int maxBlocks;
+	private static final Block END = new Block(0, 0);  // tells the writer to stop
+
+	private final AtomicInteger games = new AtomicInteger();
+	private final AtomicLong decisions = new AtomicLong();
+	private final AtomicLong busy = new AtomicLong();  // ns spent on export, game threads and writer
+	private volatile Throwable failure;
+
+	// used only by the writer thread
+	private final ByteBuffer raw;
+	private final byte[] compressed;
+	private final ByteBuffer blockHeader = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Thread writer;
+
+	// threads: number of game threads that record
+	DecisionExporter(Path file, int threads) throws IOException {
+		this(file, threads, 4096, 1 << 16);
+	}
+
+	// a block holds at most maxDecisions decisions and maxChanges changed spots.
+	// each game thread keeps one block, two more are for the writer
+	DecisionExporter(Path file, int threads, int maxDecisions, int maxChanges) throws IOException {
+		this.maxDecisions = maxDecisions;
+		this.maxChanges = maxChanges;
+		maxBlocks = threads + 2;
+		free = new ArrayBlockingQueue<>(maxBlocks);
+		full = new ArrayBlockingQueue<>(maxBlocks + 1);
+		recorder = ThreadLocal.withInitial(() -> {
+			synchronized(recorders) {
+				// more threads could take all blocks and wait for ever at the end
+				if(recorders.size() == threads)
+					throw new IllegalStateException("More than " + threads + " threads record decisions");
+				Recorder r = new Recorder();
+				recorders.add(r);
+				return r;
+			}
+		});
+
+		int rawSize = maxDecisions * (GAME_SIZE + DECISION_SIZE) + maxChanges * CHANGE_SIZE;
+		raw = ByteBuffer.allocate(rawSize).order(ByteOrder.LITTLE_ENDIAN);
+		compressed = new byte[rawSize + rawSize / 1000 + 64];  // worst case
+
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+		header.put((byte) 'M').put((byte) 'S').put((byte) 'D').put((byte) 'X').putInt(VERSION).putInt(VIEW);
+		header.flip();
+		writeFully(channel, header);
+
+		writer = new Thread(this::writeBlocks, "exporter");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	// record the board after the AI evaluation. Boards of one game must be recorded by one thread.
+	// seed, level, strategy and move tell which game and which decision it is.
+	void record(Board board, long seed, int level, int strategy, int move) throws IOException {
+		long start = System.nanoTime();
+		checkFailure();
+		int rows = board.rows();
+		int columns = board.columns();
+		int area = rows * columns;
+		if(area > Math.min(maxChanges, Short.MAX_VALUE))
+			throw new IllegalArgumentException("Board is bigger than a block");
+
+		Recorder r = recorder.get();
+		boolean first = board != r.board;  // new game, starts from an empty board
+		if(first && r.block != null)  // the last game of this thread is over
+			r.block.ended[r.block.games - 1] = 1;
+		if(r.block == null || r.block.decisions == maxDecisions || r.block.used + area > maxChanges) {
+			if(r.block != null)
+				handOver(r.block);
+			r.block = takeBlock();
+		}
+		Block block = r.block;
+
+		if(first) {
+			r.board = board;
+			r.game = games.getAndIncrement();
+			if(r.spots.length < 2 * area) {
+				r.spots = new byte[2 * area];
+				r.last = new byte[2 * area];
+			}
+			for(int i = 0; i < 2 * area; i += 2) {
+				r.last[i] = UNVISITED;
+				r.last[i + 1] = -1;
+			}
+		}
+		if(first || block.games == 0) {  // new game, or the game goes on in a new block
+			int g = block.games++;
+			block.game[g] = r.game;
+			block.seed[g] = seed;
+			block.level[g] = (byte) level;
+			block.strategy[g] = (byte) strategy;
+			block.rows[g] = (short) rows;
+			block.columns[g] = (short) columns;
+			block.ended[g] = 0;
+			block.gameDecisions[g] = 0;
+		}
+		block.gameDecisions[block.games - 1]++;
+		int d = block.decisions++;
+		block.move[d] = (short) move;
+
+		// spots that differ from the last decision, found with the vectorized Arrays.mismatch.
+		// only the changed spots are copied from the board, and the changes are copied to the last decision
+		byte[] spots = r.spots;
+		byte[] last = r.last;
+		board.exportSpots(spots, first);
+		int n = block.used;
+		int length = 2 * area;
+		for(int from = 0; from < length; ) {
+			int diff = Arrays.mismatch(spots, from, length, last, from, length);
+			if(diff < 0)
+				break;
+			int spot = (from + diff) / 2;
+			block.spot[n] = (short) spot;
+			block.code[n] = last[2 * spot] = spots[2 * spot];
+			block.risk[n] = last[2 * spot + 1] = spots[2 * spot + 1];
+			n++;
+			from = 2 * spot + 2;
+		}
+		block.changes[d] = (short) (n - block.used);
+		block.used = n;
+
+		decisions.incrementAndGet();
+		busy.addAndGet(System.nanoTime() - start);
+	}
+
+	long getDecisions() {
+		return decisions.get();
+	}
+
+	// time spent on the export so far, by the game threads and the writer, in seconds
+	double getBusySeconds() {
+		return busy.get() / 1e9;
+	}
+
+	// write what is left and close the file. Call it after the last record of every game thread
+	@Override
+	public void close() throws IOException {
+		try {
+			synchronized(recorders) {
+				for(Recorder r : recorders)
+					if(r.block != null && r.block.decisions > 0) {
+						r.block.ended[r.block.games - 1] = 1;
+						handOver(r.block);
+					}
+				recorders.clear();
+			}
+			handOver(END);
+			writer.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while writing decisions", e);
+		} finally {
+			channel.close();
+		}
+		checkFailure();
+	}
+
+	// an empty block: from the pool, a new one while the pool is not full, or wait for the writer
+	private Block takeBlock() throws IOException {
+		Block block = free.poll();
+		if(block != null)
+			return block;
+		for(int created = blocks.get(); created < maxBlocks; created = blocks.get())
+			if(blocks.compareAndSet(created, created + 1))
+				return new Block(maxDecisions, maxChanges);
+		try {
+			return free.take();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while writing decisions", e);
+		}
+	}
+
+	private void handOver(Block block) throws IOException {
+		try {
+			full.put(block);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while writing decisions", e);
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if(failure != null)
+			throw new IOException("failed to write decisions", failure);
+	}
+
+	// the writer thread: write the full blocks in the order they come and give them back to the pool.
+	// after a failure the blocks are still given back, so no game thread waits for ever
+	private void writeBlocks() {
+		try {
+			while(true) {
+				Block block = full.take();
+				if(block == END)
+					break;
+				long start = System.nanoTime();
+				try {
+					if(failure == null)
+						writeBlock(block);
+				} catch(IOException | RuntimeException e) {
+					failure = e;
+				}
+				block.games = 0;
+				block.decisions = 0;
+				block.used = 0;
+				free.offer(block);
+				busy.addAndGet(System.nanoTime() - start);
+			}
+		} catch(InterruptedException e) {
+			failure = e;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	// lay out the block column by column, compress and write it
+	private void writeBlock(Block block) throws IOException {
+		int g = block.games;
+		int d = block.decisions;
+		int n = block.used;
+		raw.clear();
+		raw.asIntBuffer().put(block.game, 0, g);
+		raw.position(raw.position() + 4*g);
+		raw.asLongBuffer().put(block.seed, 0, g);
+		raw.position(raw.position() + 8*g);
+		raw.put(block.level, 0, g);
+		raw.put(block.strategy, 0, g);
+		raw.put(block.ended, 0, g);
+		putShorts(block.rows, g);
+		putShorts(block.columns, g);
+		raw.asIntBuffer().put(block.gameDecisions, 0, g);
+		raw.position(raw.position() + 4*g);
+		putShorts(block.move, d);
+		putShorts(block.changes, d);
+		raw.put(block.code, 0, n);
+		raw.put(block.risk, 0, n);
+		for(int k = 0, c = 0; k < d; k++) {
+			int last = -1;
+			for(int end = c + block.changes[k]; c < end; c++) {
+				int gap = block.spot[c] - last - 1;
+				if(gap < BIG_GAP)
+					raw.put((byte) gap);
+				else
+					raw.put((byte) BIG_GAP).putShort(block.spot[c]);
+				last = block.spot[c];
+			}
+		}
+
+		int end = raw.position();
+		deflater.reset();
+		deflater.setInput(raw.array(), 0, end);
+		deflater.finish();
+		int length = 0;
+		while(!deflater.finished())
+			length += deflater.deflate(compressed, length, compressed.length - length);
+
+		blockHeader.clear();
+		blockHeader.putInt(g).putInt(d).putInt(n).putInt(end).putInt(length);
+		blockHeader.flip();
+		writeFully(channel, blockHeader);
+		writeFully(channel, ByteBuffer.wrap(compressed, 0, length));
+	}
+
+	// bulk copy of a short column into the raw block
+	private void putShorts(short[] column, int length) {
+		raw.asShortBuffer().put(column, 0, length);
+		raw.position(raw.position() + 2*length);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining())
+			if(channel.read(buffer) < 0)
+				throw new IOException("unexpected end of decision file");
+	}
+
+	// one decision read back from a file: the board as the player saw it, the risks from AI and the mines.
+	// the arrays are reused for the next decision of the same game, copy what has to be kept
+	static class Decision {
+		int game;
+		long seed;
+		int level, strategy, move;
+		int rows, columns;
+		byte[] code;  // view code + MINE_BIT, row by row
+		byte[] risk;
+
+		int code(int rowIndex, int colIndex) {
+			if(rowIndex < 0 || rowIndex >= rows || colIndex < 0 || colIndex >= columns)
+				return OUTSIDE;
+			return code[rowIndex * columns + colIndex] & (MINE_BIT - 1);
+		}
+
+		int risk(int rowIndex, int colIndex) {
+			return risk[rowIndex * columns + colIndex];
+		}
+
+		boolean isMine(int rowIndex, int colIndex) {
+			return (code[rowIndex * columns + colIndex] & MINE_BIT) != 0;
+		}
+
+		// unvisited spot next to a visited spot
+		boolean isFrontier(int rowIndex, int colIndex) {
+			if(code(rowIndex, colIndex) < UNVISITED)
+				return false;
+			for(int i = rowIndex-1; i <= rowIndex+1; i++)
+				for(int j = colIndex-1; j <= colIndex+1; j++)
+					if(code(i, j) < UNVISITED)
+						return true;
+			return false;
+		}
+
+		// view codes around a spot, VIEW X VIEW row by row
+		byte[] view(int rowIndex, int colIndex) {
+			byte[] view = new byte[VIEW * VIEW];
+			for(int i = 0; i < VIEW; i++)
+				for(int j = 0; j < VIEW; j++)
+					view[i * VIEW + j] = (byte) code(rowIndex - VIEW/2 + i, colIndex - VIEW/2 + j);
+			return view;
+		}
+	}
+
+	// play the file back, one decision after another. return the number of decisions
+	static long read(Path file, Consumer<Decision> consumer) throws IOException {
+		Map<Integer, Decision> games = new HashMap<>();  // last decision of each game going on
+		long count = 0;
+		Inflater inflater = new Inflater();
+		try(FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(in, header);
+			header.flip();
+			if(header.getInt() != ('M' | 'S' << 8 | 'D' << 16 | 'X' << 24) || header.getInt() != VERSION
+					|| header.getInt() != VIEW)
+				throw new IOException("not a decision file of version " + VERSION + ": " + file);
+
+			ByteBuffer blockHeader = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+			while(true) {
+				blockHeader.clear();
+				if(in.read(blockHeader) <= 0)
+					break;
+				readFully(in, blockHeader);
+				blockHeader.flip();
+				int g = blockHeader.getInt();
+				int d = blockHeader.getInt();
+				int n = blockHeader.getInt();
+				byte[] raw = new byte[blockHeader.getInt()];
+				ByteBuffer compressed = ByteBuffer.allocate(blockHeader.getInt());
+				readFully(in, compressed);
+
+				inflater.reset();
+				inflater.setInput(compressed.array());
+				try {
+					if(inflater.inflate(raw) != raw.length)
+						throw new IOException("broken block in " + file);
+				} catch(DataFormatException e) {
+					throw new IOException("broken block in " + file, e);
+				}
+
+				ByteBuffer b = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+				int seedAt = 4*g, levelAt = 12*g, strategyAt = 13*g, endedAt = 14*g, rowsAt = 15*g, columnsAt = 17*g;
+				int decisionsAt = 19*g, moveAt = 23*g, changesAt = moveAt + 2*d;
+				int codeAt = changesAt + 2*d, riskAt = codeAt + n, spotAt = riskAt + n;
+				int k = 0, c = 0;  // decision and change
+				for(int i = 0; i < g; i++) {
+					Decision decision = games.get(b.getInt(4*i));
+					if(decision == null) {  // first decision of the game, which starts from an empty board
+						decision = new Decision();
+						decision.game = b.getInt(4*i);
+						decision.seed = b.getLong(seedAt + 8*i);
+						decision.level = raw[levelAt + i];
+						decision.strategy = raw[strategyAt + i];
+						decision.rows = b.getShort(rowsAt + 2*i);
+						decision.columns = b.getShort(columnsAt + 2*i);
+						decision.code = new byte[decision.rows * decision.columns];
+						decision.risk = new byte[decision.rows * decision.columns];
+						Arrays.fill(decision.code, UNVISITED);
+						Arrays.fill(decision.risk, (byte) -1);
+						games.put(decision.game, decision);
+					}
+					for(int end = k + b.getInt(decisionsAt + 4*i); k < end; k++) {
+						decision.move = b.getShort(moveAt + 2*k);
+						int changes = b.getShort(changesAt + 2*k);
+						int spot = -1;
+						for(int m = 0; m < changes; m++, c++) {
+							int gap = raw[spotAt++] & 0xff;
+							if(gap < BIG_GAP)
+								spot += gap + 1;
+							else {
+								spot = b.getShort(spotAt);
+								spotAt += 2;
+							}
+							decision.code[spot] = raw[codeAt + c];
+							decision.risk[spot] = raw[riskAt + c];
+						}
+						consumer.accept(decision);
+						count++;
+					}
+					if(raw[endedAt + i] != 0)
+						games.remove(decision.game);
+				}
+			}
+		} finally {
+			inflater.end();
+		}
+		return count;
+	}
+
+	// frontier records of a file: count them with the share of mines per risk, and print the first ones
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0) {
+			System.out.println("usage: java main.DecisionExporter decisions.bin [--dump 20]");
+			return;
+		}
+		long dump = 0;
+		for(int i = 1; i < args.length; i++) {
+			String value = i + 1 < args.length ? args[i+1] : "";
+			switch(args[i]) {
+			case "--dump":		dump = Long.parseLong(value); i++; break;
+			default:
+				System.out.println("Unknown option: " + args[i]);
+				System.out.println("Options: --dump");
+				return;
+			}
+		}
+
+		// by risk: not evaluated, below 0, 0-9 ... 90-99, 100, above 100 (the AI guesses can leave 0 - 100)
+		long[] records = new long[14];
+		long[] mines = new long[14];
+		long maxDump = dump;
+		long[] printed = {0};
+		String codes = "012345678.F#";  // view codes as text
+		long decisions = read(Paths.get(args[0]), decision -> {
+			for(int i = 0; i < decision.rows; i++) {
+				for(int j = 0; j < decision.columns; j++) {
+					if(!decision.isFrontier(i, j))
+						continue;
+					int risk = decision.risk(i, j);
+					int bucket = risk == -1 ? 0 : risk < 0 ? 1 : risk > 100 ? 13 : risk / 10 + 2;
+					records[bucket]++;
+					if(decision.isMine(i, j))
+						mines[bucket]++;
+					if(printed[0] == maxDump)
+						continue;
+					printed[0]++;
+					StringBuilder view = new StringBuilder();
+					for(byte code : decision.view(i, j))
+						view.append(codes.charAt(code));
+					System.out.printf("game %d seed %d level %d strategy %d move %d spot %d-%d risk %d mine %d view %s%n",
+							decision.game, decision.seed, decision.level, decision.strategy, decision.move,
+							i, j, risk, decision.isMine(i, j) ? 1 : 0, view);
+				}
+			}
+		});
+
+		long all = Arrays.stream(records).sum();
+		System.out.printf("%d decisions, %d frontier records, %d mines%n", decisions, all, Arrays.stream(mines).sum());
+		for(int b = 0; b < records.length; b++) {
+			if(records[b] == 0)
+				continue;
+			String risk = b == 0 ? "not evaluated" : b == 1 ? "below 0" : b == 12 ? "100" : b == 13 ? "above 100"
+					: (b - 2) * 10 + "-" + ((b - 2) * 10 + 9);
+			System.out.printf(Locale.ROOT, "  risk %-14s %10d records  %5.1f%% mines%n", risk, records[b],
+					100.0 * mines[b] / records[b]);
+		}
+	}
+}
@@ -0,0 +1,490 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+// ***************************************************************************************************************
+// Differential fuzzer: plays random seeded games on small boards with Board and ReferenceBoard side by side.
+// - after every move: result of the move, opened spots, flags, hints (all spots and the copies on the AI board),
+//   blind spots and spots left must be the same, and every 0 or 100 risk the AI claims must be the
+//   exact chance from ReferenceBoard. Exceptions from Board count as mismatches too.
+// - moves: mostly the safe spot of the AI, else a random spot which is usually not a mine
+//   (so games get far enough), sometimes a flag.
+// - a failing game is made smaller: moves and then mines are taken out one by one as long as the same kind
+//   of mismatch still shows up. The result is written as a case file that --replay plays again.
+// - --chunked: the same for ChunkedBoard, on a block of 2*size X 2*size spots around a random corner where
+//   four chunks meet, so hints and flood fill go over chunk borders. The reference gets the mines of the
+//   block from ChunkedBoard.isMine and knows nothing beyond it, so moves are played inside the outer ring
+//   of the block, and hints, opened spots, flags and 0 or 100 risks are compared inside it. The game stops
+//   when a flood fill reaches the ring. Only moves are taken out to make a failing game smaller.
+//
+// usage: java main.DifferentialFuzzer [--games 1000] [--seed 1] [--size 8] [--out fuzz-cases] [--max-cases 20]
+//                                     [--chunked]
+//        java main.DifferentialFuzzer --replay file
+// case file: "size rows columns", then "mine row column" per mine and "open|flag row column" per move.
+// for --chunked "chunked seed row column" (seed of the board and top left spot of the block) instead of mines,
+// the moves are relative to the block.
+// **************************************************************************************************************
+
+public class DifferentialFuzzer {
+
+	// a game that can be played again: mines and moves
+	static class Case {
+		final boolean[][] mines;  // for a block of ChunkedBoard only the size, the mines come from the seed
+		final List<int[]> moves = new ArrayList<>();  // [row, column, isFlag]
+		Area area;  // null for Board
+
+		Case(boolean[][] mines) {
+			this.mines = mines;
+		}
+
+		Case copy() {
+			boolean[][] m = new boolean[mines.length][];
+			for(int i = 0; i < mines.length; i++)
+				m[i] = mines[i].clone();
+			Case c = new Case(m);
+			c.moves.addAll(moves);
+			c.area = area;
+			return c;
+		}
+	}
+
+	// block of a ChunkedBoard a case is played on: seed of the board and its top left spot
+	static class Area {
+		final long seed;
+		final int row, column;
+
+		Area(long seed, int row, int column) {
+			this.seed = seed;
+			this.row = row;
+			this.column = column;
+		}
+	}
+
+	// moves of one game at most, per spot of the board
+	private static final int MOVES_PER_SPOT = 2;
+
+	public static void main(String[] args) throws IOException {
+		int games = 1000;
+		long seed = 1;
+		int size = 8;
+		String out = "fuzz-cases";
+		int maxCases = 20;
+		String replay = null;
+		boolean chunked = false;
+
+		for(int i = 0; i < args.length; i++) {
+			String value = i + 1 < args.length ? args[i+1] : "";
+			switch(args[i]) {
+			case "--games":			games = Integer.parseInt(value); i++; break;
+			case "--seed":			seed = Long.parseLong(value); i++; break;
+			case "--size":			size = Integer.parseInt(value); i++; break;
+			case "--out":			out = value; i++; break;
+			case "--max-cases":		maxCases = Integer.parseInt(value); i++; break;
+			case "--replay":		replay = value; i++; break;
+			case "--chunked":		chunked = true; break;
+			default:
+				System.out.println("Unknown option: " + args[i]);
+				System.out.println("Options: --games --seed --size --out --max-cases --replay --chunked");
+				return;
+			}
+		}
+
+		if(replay != null) {
+			String mismatch = play(load(Paths.get(replay)), null);
+			System.out.println(mismatch == null ? "No mismatch" : mismatch);
+			System.exit(mismatch == null ? 0 : 1);
+		}
+		if(size < 2)
+			throw new IllegalArgumentException("Board size must be at least 2");
+		if(chunked && size > ChunkedBoard.SIZE / 2)  // the block stays in the four chunks around the corner
+			throw new IllegalArgumentException("Board size must be at most " + ChunkedBoard.SIZE / 2 + " with --chunked");
+
+		Random master = new Random(seed);
+		Map<String, Integer> kinds = new TreeMap<>();
+		int failed = 0;
+		for(int g = 0; g < games; g++) {
+			long gameSeed = master.nextLong();
+			Random random = new Random(gameSeed);
+			Case game = chunked ? randomBlock(random, size) : new Case(randomMines(random, size));
+			String mismatch = play(game, random);
+			if(mismatch == null)
+				continue;
+
+			failed++;
+			kinds.merge(kind(mismatch), 1, Integer::sum);
+			if(failed <= maxCases) {
+				Case small = shrink(game, mismatch);
+				Path file = Paths.get(out, "case-" + Long.toUnsignedString(gameSeed) + ".txt");
+				save(small, play(small.copy(), null), gameSeed, file);
+				System.out.println(mismatch + "  ->  " + file);
+			}
+		}
+
+		System.out.printf("%d games, %d with mismatches%n", games, failed);
+		for(Map.Entry<String, Integer> kind : kinds.entrySet())
+			System.out.printf("  %-12s %d%n", kind.getKey(), kind.getValue());
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	// board of random size up to size X size, with up to a quarter of it mines
+	static boolean[][] randomMines(Random random, int size) {
+		int rows = 2 + random.nextInt(size - 1);
+		int columns = 2 + random.nextInt(size - 1);
+		int count = 1 + random.nextInt(rows * columns / 4);
+		boolean[][] mines = new boolean[rows][columns];
+		for(int pos : random.ints(0, rows * columns).distinct().limit(count).toArray())
+			mines[pos / columns][pos % columns] = true;
+		return mines;
+	}
+
+	// block of 2*size X 2*size spots of a new ChunkedBoard, around a corner where four chunks meet.
+	// the corner is mostly anywhere on the board, sometimes close to spot 0-0
+	static Case randomBlock(Random random, int size) {
+		Area area = new Area(random.nextLong(), randomCorner(random) - size, randomCorner(random) - size);
+		Case game = new Case(new boolean[2 * size][2 * size]);
+		game.area = area;
+		return game;
+	}
+
+	// a chunk border, not the first or last one of the int range so the block fits in it
+	static int randomCorner(Random random) {
+		int limit = Integer.MAX_VALUE / ChunkedBoard.SIZE;
+		int chunk = random.nextInt(4) == 0 ? random.nextInt(5) - 2 : random.nextInt(2 * limit - 1) - limit + 1;
+		return chunk * ChunkedBoard.SIZE;
+	}
+
+	// play a case on both boards and check after every move.
+	// random: make up new moves and add them to the case, null to play the moves of the case.
+	// return: the first mismatch ("kind [at spot]: what happened"), null if none. The moves after it are dropped.
+	static String play(Case game, Random random) {
+		if(game.area != null)
+			return playChunked(game, random);
+		Board board = new Board(game.mines);
+		board.quiet = true;
+		board.lookaheadBudget = 0;
+		ReferenceBoard reference = new ReferenceBoard(game.mines);
+		int maxMoves = MOVES_PER_SPOT * reference.rows() * reference.columns();
+
+		for(int played = 0; random != null ? played < maxMoves : played < game.moves.size(); ) {
+			int[] move;
+			if(random != null) {
+				move = nextMove(board, reference, random, 0, 0, 0);
+				game.moves.add(move);
+			}
+			else
+				move = game.moves.get(played);
+			played++;
+
+			String mismatch;
+			int result = 0;
+			try {
+				result = board.updateBoard(move[0], move[1], move[2]);
+				board.awaitAI();  // wait for the evaluation so the game plays the same every time
+				int expected = 0;
+				if(move[2] == 0)
+					expected = reference.open(move[0], move[1]);
+				else
+					reference.flag(move[0], move[1]);
+				mismatch = check(board, reference, result, expected);
+			} catch(RuntimeException e) {
+				mismatch = "exception: " + e;
+			}
+
+			if(mismatch != null) {
+				game.moves.subList(played, game.moves.size()).clear();
+				return mismatch + " (move " + played + ")";
+			}
+			if(result != 0)  // win or game over
+				break;
+		}
+		return null;
+	}
+
+	// compare the two boards after a move
+	static String check(Board board, ReferenceBoard reference, int result, int expected) {
+		if(result != expected)
+			return "result: board " + result + ", reference " + expected;
+
+		for(int i = 0; i < reference.rows(); i++) {
+			for(int j = 0; j < reference.columns(); j++) {
+				String spot = " at " + i + "-" + j + ": ";
+				if(board.isVisited(i, j) != reference.isVisited(i, j))
+					return "opened" + spot + "board " + board.isVisited(i, j) + ", reference " + reference.isVisited(i, j);
+				if(board.isFlagged(i, j) != reference.isFlagged(i, j))
+					return "flag" + spot + "board " + board.isFlagged(i, j) + ", reference " + reference.isFlagged(i, j);
+				if(!board.isMine(i, j) && board.getHint(i, j) != reference.hint(i, j))
+					return "hint" + spot + "board " + board.getHint(i, j) + ", reference " + reference.hint(i, j);
+				if(board.isVisited(i, j) && board.getAIHint(i, j) != reference.hint(i, j))
+					return "ai-hint" + spot + "board " + board.getAIHint(i, j) + ", reference " + reference.hint(i, j);
+				if(board.getBlindSpots(i, j) != reference.blindSpots(i, j))
+					return "blind-spots" + spot + "board " + board.getBlindSpots(i, j)
+							+ ", reference " + reference.blindSpots(i, j);
+			}
+		}
+		if(board.getSpotsLeft() != reference.spotsLeft())
+			return "spots-left: board " + board.getSpotsLeft() + ", reference " + reference.spotsLeft();
+
+		if(result != 0)  // the AI does not run after the last move
+			return null;
+		double[][] chance = reference.mineChance();
+		if(chance == null)  // too many unknown spots to work out
+			return null;
+		for(int i = 0; i < reference.rows(); i++) {
+			for(int j = 0; j < reference.columns(); j++) {
+				if(board.isVisited(i, j))
+					continue;
+				int risk = board.getRisk(i, j);
+				if(risk == 0 && chance[i][j] != 0 || risk == 100 && chance[i][j] != 1)
+					return String.format(Locale.ROOT, "risk-%d at %d-%d: chance of mine is %.1f%%",
+							risk, i, j, chance[i][j] * 100);
+			}
+		}
+		return null;
+	}
+
+	// next move of a random game: [row, column, isFlag], on the spots of the reference
+	// top, left: spot of the board at 0-0 of the reference. border: rows and columns at each side not played
+	static int[] nextMove(Board board, ReferenceBoard reference, Random random, int top, int left, int border) {
+		List<int[]> closed = new ArrayList<>();
+		List<int[]> safe = new ArrayList<>();
+		for(int i = border; i < reference.rows() - border; i++) {
+			for(int j = border; j < reference.columns() - border; j++) {
+				if(reference.isVisited(i, j))
+					continue;
+				closed.add(new int[] {i, j, 0});
+				if(!board.isMine(top + i, left + j))
+					safe.add(new int[] {i, j, 0});
+			}
+		}
+
+		if(random.nextInt(10) == 0) {
+			int[] spot = closed.get(random.nextInt(closed.size()));
+			return new int[] {spot[0], spot[1], 1};
+		}
+		int[] suggestion = board.getSafeSpot();
+		long row = (long) suggestion[0] - top;
+		long column = (long) suggestion[1] - left;
+		if(suggestion[2] == 0 && random.nextInt(3) != 0 && row >= border && row < reference.rows() - border
+				&& column >= border && column < reference.columns() - border
+				&& !reference.isVisited((int) row, (int) column))
+			return new int[] {(int) row, (int) column, 0};
+		// a lucky player: most guesses miss the mines
+		if(!safe.isEmpty() && random.nextInt(10) != 0)
+			return safe.get(random.nextInt(safe.size()));
+		return closed.get(random.nextInt(closed.size()));
+	}
+
+	// play a case on a block of ChunkedBoard and the reference of the block, like play
+	static String playChunked(Case game, Random random) {
+		Area area = game.area;
+		ChunkedBoard board = new ChunkedBoard(area.seed);
+		board.quiet = true;
+		board.lookaheadBudget = 0;
+		boolean[][] mines = new boolean[game.mines.length][game.mines[0].length];
+		for(int i = 0; i < mines.length; i++)
+			for(int j = 0; j < mines[0].length; j++)
+				mines[i][j] = board.isMine(area.row + i, area.column + j);
+		ReferenceBoard reference = new ReferenceBoard(mines);
+		int maxMoves = MOVES_PER_SPOT * reference.rows() * reference.columns();
+
+		for(int played = 0; random != null ? played < maxMoves : played < game.moves.size(); ) {
+			int[] move;
+			if(random != null) {
+				move = nextMove(board, reference, random, area.row, area.column, 1);
+				game.moves.add(move);
+			}
+			else
+				move = game.moves.get(played);
+			played++;
+
+			String mismatch;
+			int result = 0;
+			boolean stop = false;
+			try {
+				result = board.updateBoard(area.row + move[0], area.column + move[1], move[2]);
+				board.awaitAI();
+				int expected = 0;
+				if(move[2] == 0)
+					expected = reference.open(move[0], move[1]) == 2 ? 2 : 0;  // the infinite board goes on
+				else
+					reference.flag(move[0], move[1]);
+				mismatch = checkHints(board, reference, area);
+				stop = mismatch == null && reachedRing(board, reference, area);
+				if(mismatch == null && !stop)
+					mismatch = checkChunked(board, reference, area, result, expected);
+			} catch(RuntimeException e) {
+				mismatch = "exception: " + e;
+			}
+
+			if(mismatch != null || stop) {
+				game.moves.subList(played, game.moves.size()).clear();
+				return mismatch == null ? null : mismatch + " (move " + played + ")";
+			}
+			if(result != 0)  // game over
+				break;
+		}
+		return null;
+	}
+
+	// hints inside the ring of the block, the reference does not know the mines beyond it
+	static String checkHints(ChunkedBoard board, ReferenceBoard reference, Area area) {
+		for(int i = 1; i < reference.rows() - 1; i++) {
+			for(int j = 1; j < reference.columns() - 1; j++) {
+				int hint = board.getHint(area.row + i, area.column + j);
+				if(!reference.isMine(i, j) && hint != reference.hint(i, j))
+					return "hint at " + i + "-" + j + ": board " + hint + ", reference " + reference.hint(i, j);
+			}
+		}
+		return null;
+	}
+
+	// a spot on the ring of the block is opened: the flood fill may have gone on beyond the block
+	static boolean reachedRing(ChunkedBoard board, ReferenceBoard reference, Area area) {
+		for(int i = 0; i < reference.rows(); i++) {
+			for(int j = 0; j < reference.columns(); j++) {
+				boolean ring = i == 0 || j == 0 || i == reference.rows() - 1 || j == reference.columns() - 1;
+				if(ring && (reference.isVisited(i, j) || board.isVisited(area.row + i, area.column + j)))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	// compare the block inside its ring after a move, like check
+	static String checkChunked(ChunkedBoard board, ReferenceBoard reference, Area area, int result, int expected) {
+		if(result != expected)
+			return "result: board " + result + ", reference " + expected;
+
+		for(int i = 1; i < reference.rows() - 1; i++) {
+			for(int j = 1; j < reference.columns() - 1; j++) {
+				String spot = " at " + i + "-" + j + ": ";
+				int row = area.row + i;
+				int col = area.column + j;
+				if(board.isVisited(row, col) != reference.isVisited(i, j))
+					return "opened" + spot + "board " + board.isVisited(row, col) + ", reference " + reference.isVisited(i, j);
+				if(board.isFlagged(row, col) != reference.isFlagged(i, j))
+					return "flag" + spot + "board " + board.isFlagged(row, col) + ", reference " + reference.isFlagged(i, j);
+			}
+		}
+
+		if(result != 0)  // the AI does not run after the last move
+			return null;
+		double[][] chance = reference.mineChance();
+		if(chance == null)  // too many unknown spots to work out
+			return null;
+		for(int i = 1; i < reference.rows() - 1; i++) {
+			for(int j = 1; j < reference.columns() - 1; j++) {
+				if(reference.isVisited(i, j))
+					continue;
+				int risk = board.getRisk(area.row + i, area.column + j);
+				if(risk == 0 && chance[i][j] != 0 || risk == 100 && chance[i][j] != 1)
+					return String.format(Locale.ROOT, "risk-%d at %d-%d: chance of mine is %.1f%%",
+							risk, i, j, chance[i][j] * 100);
+			}
+		}
+		return null;
+	}
+
+	// smaller case with the same kind of mismatch: take out moves, then mines, while it still fails
+	static Case shrink(Case game, String mismatch) {
+		String kind = kind(mismatch);
+		boolean smaller = true;
+		while(smaller) {
+			smaller = false;
+			for(int k = game.moves.size() - 1; k >= 0; k--) {
+				Case next = game.copy();
+				next.moves.remove(k);
+				if(kind.equals(kind(play(next, null)))) {
+					game = next;
+					smaller = true;
+				}
+			}
+			if(game.area != null)  // the mines come from the seed
+				continue;
+			for(int i = 0; i < game.mines.length; i++) {
+				for(int j = 0; j < game.mines[0].length; j++) {
+					if(!game.mines[i][j])
+						continue;
+					Case next = game.copy();
+					next.mines[i][j] = false;
+					if(kind.equals(kind(play(next, null)))) {
+						game = next;
+						smaller = true;
+					}
+				}
+			}
+		}
+		return game;
+	}
+
+	// kind of a mismatch, its first word
+	static String kind(String mismatch) {
+		return mismatch == null ? null : mismatch.split("[ :]", 2)[0];
+	}
+
+	static void save(Case game, String mismatch, long seed, Path file) throws IOException {
+		if(file.getParent() != null)
+			Files.createDirectories(file.getParent());
+		try(PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+			writer.println("# " + mismatch);
+			writer.println("# found by game seed " + Long.toUnsignedString(seed));
+			writer.println("size " + game.mines.length + " " + game.mines[0].length);
+			if(game.area != null)
+				writer.println("chunked " + game.area.seed + " " + game.area.row + " " + game.area.column);
+			for(int i = 0; i < game.mines.length; i++)
+				for(int j = 0; j < game.mines[0].length; j++)
+					if(game.mines[i][j])
+						writer.println("mine " + i + " " + j);
+			for(int[] move : game.moves)
+				writer.println((move[2] == 0 ? "open " : "flag ") + move[0] + " " + move[1]);
+		}
+	}
+
+	static Case load(Path file) throws IOException {
+		Case game = null;
+		try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] token = line.split("\\s+");
+				if(token[0].equals("chunked")) {
+					if(game == null)
+						throw new IOException("Case file must start with size: " + file);
+					game.area = new Area(Long.parseLong(token[1]), Integer.parseInt(token[2]), Integer.parseInt(token[3]));
+					continue;
+				}
+				int row = Integer.parseInt(token[1]);
+				int column = Integer.parseInt(token[2]);
+				if(token[0].equals("size")) {
+					game = new Case(new boolean[row][column]);
+					continue;
+				}
+				if(game == null)
+					throw new IOException("Case file must start with size: " + file);
+				switch(token[0]) {
+				case "mine":	game.mines[row][column] = true; break;
+				case "open":	game.moves.add(new int[] {row, column, 0}); break;
+				case "flag":	game.moves.add(new int[] {row, column, 1}); break;
+				default:		throw new IOException("Unknown line in " + file + ": " + line);
+				}
+			}
+		}
+		if(game == null)
+			throw new IOException("No board in " + file);
+		return game;
+	}
+}
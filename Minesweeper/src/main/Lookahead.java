@@ -0,0 +1,196 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// ***************************************************************************************************************
+// Lookahead guess for the AI. Only used when the AI can not find a safe spot.
+// Basic idea:
+// - candidates are the unvisited spots whose risk is close to the lowest risk on the board.
+// - for each candidate, and each hint it could show, open it on a copy of the AI board and let the AI run.
+//   the number of safe spots the AI finds there is what the guess unlocks.
+//   the chance of each hint comes from the risks of the surrounding spots.
+// - score = chance to survive * (1 + expected unlocked safe spots [+ best score of the next guess])
+// - search depth 1, 2, 3... in turn until the time budget is used up. The deepest finished depth wins.
+//   candidates of the same depth are scored in parallel.
+// **************************************************************************************************************
+
+class Lookahead {
+	// only spots within this risk of the lowest risk are worth a look
+	private static final int SLACK = 10;
+	private static final int MAX_CANDIDATES = 8;
+	private static final int MAX_DEPTH = 4;
+
+	private static final ExecutorService pool = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), r -> {
+				Thread t = new Thread(r, "lookahead");
+				t.setDaemon(true);
+				return t;
+			});
+
+	// pick the best guess within the time budget (ms)
+	// return: [row, column, risk] or null if no depth finished in time
+	static int[] select(Board board, int budget) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+		List<int[]> candidates = candidates(board);
+		if(candidates.size() < 2)  // nothing to choose from
+			return null;
+
+		int[] best = null;
+		for(int depth = 1; depth <= MAX_DEPTH; depth++) {
+			final int d = depth;
+			List<Callable<Double>> tasks = new ArrayList<>();
+			for(int[] spot : candidates)
+				tasks.add(() -> score(board, spot[0], spot[1], d, deadline));
+
+			long remain = deadline - System.nanoTime();
+			if(remain <= 0)
+				break;
+
+			double[] scores = new double[tasks.size()];
+			try {
+				List<Future<Double>> results = pool.invokeAll(tasks, remain, TimeUnit.NANOSECONDS);
+				for(int i = 0; i < scores.length; i++)
+					scores[i] = results.get(i).get();
+			} catch(CancellationException | ExecutionException e) {  // ran out of time
+				break;
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+
+			int[] depthBest = null;
+			double bestScore = -1;
+			for(int i = 0; i < scores.length; i++) {
+				if(Double.isNaN(scores[i])) {  // deadline hit inside the search, depth not finished
+					depthBest = null;
+					break;
+				}
+				if(scores[i] > bestScore) {
+					bestScore = scores[i];
+					depthBest = candidates.get(i);
+				}
+			}
+			if(depthBest == null)
+				break;
+			best = depthBest;
+		}
+		return best;
+	}
+
+	// score one guess, NaN if the deadline was hit
+	static double score(Board board, int rowIndex, int colIndex, int depth, long deadline) {
+		double density = density(board);
+		double[] hints = hintChance(board, rowIndex, colIndex, density);
+		double expected = 0;
+
+		for(int hint = 0; hint < hints.length; hint++) {
+			if(hints[hint] == 0)
+				continue;
+			if(System.nanoTime() > deadline)
+				return Double.NaN;
+
+			Board next = board.speculate(rowIndex, colIndex, hint);
+			double value = countSafeSpots(next);
+			if(depth > 1 && value == 0) {  // nothing unlocked, need another guess
+				double bestNext = 0;
+				for(int[] spot : candidates(next)) {
+					double s = score(next, spot[0], spot[1], depth - 1, deadline);
+					if(Double.isNaN(s))
+						return s;
+					bestNext = Math.max(bestNext, s);
+				}
+				value += bestNext;
+			}
+			expected += hints[hint] * value;
+		}
+		return (100 - risk(board, rowIndex, colIndex, density)) / 100.0 * (1 + expected);
+	}
+
+	// unvisited spots close to the lowest risk, ordered by risk: [row, column, risk]
+	static List<int[]> candidates(Board board) {
+		double density = density(board);
+		List<int[]> spots = new ArrayList<>();
+		int lowest = 100;
+		for(int i = 0; i < board.rows(); i++) {
+			for(int j = 0; j < board.columns(); j++) {
+				if(board.isVisited(i, j) || board.getRisk(i, j) == 100)
+					continue;
+				int risk = risk(board, i, j, density);
+				spots.add(new int[] {i, j, risk});
+				lowest = Math.min(lowest, risk);
+			}
+		}
+
+		final int limit = lowest + SLACK;
+		spots.removeIf(spot -> spot[2] > limit);
+		spots.sort((a, b) -> a[2] - b[2]);  // stable, keeps the row-column order for same risk
+		return spots.size() > MAX_CANDIDATES ? new ArrayList<>(spots.subList(0, MAX_CANDIDATES)) : spots;
+	}
+
+	// risk of a spot, the spots without evaluation take the average risk of the unknown spots
+	static int risk(Board board, int rowIndex, int colIndex, double density) {
+		int risk = board.getRisk(rowIndex, colIndex);
+		return risk == -1 ? (int) Math.round(density * 100) : risk;
+	}
+
+	// chance that an unknown spot is a mine
+	static double density(Board board) {
+		int unknown = 0;
+		int foundMines = 0;
+		for(int i = 0; i < board.rows(); i++) {
+			for(int j = 0; j < board.columns(); j++) {
+				if(board.isVisited(i, j))
+					continue;
+				if(board.getRisk(i, j) == 100)
+					foundMines++;
+				else
+					unknown++;
+			}
+		}
+		if(unknown == 0)
+			return 0;
+		return Math.min(1.0, Math.max(0.0, (double) (board.getMines() - foundMines) / unknown));
+	}
+
+	// chance of each hint (0 - 8) if the spot is safe.
+	// surrounding spots are taken as independent mines with their own risk
+	static double[] hintChance(Board board, int rowIndex, int colIndex, double density) {
+		double[] chance = new double[9];
+		chance[0] = 1;
+		int n = 0;  // unvisited surrounding spots so far
+
+		for(int i = rowIndex-1; i <= rowIndex + 1; i++) {  //surrounding rows
+			if(i < 0 || i >= board.rows())  //out of boundary
+				continue;
+			for(int j = colIndex-1; j <= colIndex+1; j++) {  //surrounding columns
+				if(j < 0 || j >= board.columns() 		//out of boundary
+						 || (i == rowIndex && j == colIndex) || board.isVisited(i, j))
+					continue;
+				double p = risk(board, i, j, density) / 100.0;
+				n++;
+				for(int h = n; h > 0; h--)
+					chance[h] = chance[h] * (1 - p) + chance[h-1] * p;
+				chance[0] *= 1 - p;
+			}
+		}
+		return chance;
+	}
+
+	// number of unvisited spots the AI marked safe
+	static int countSafeSpots(Board board) {
+		int count = 0;
+		for(int i = 0; i < board.rows(); i++)
+			for(int j = 0; j < board.columns(); j++)
+				if(!board.isVisited(i, j) && board.getRisk(i, j) == 0)
+					count++;
+		return count;
+	}
+}
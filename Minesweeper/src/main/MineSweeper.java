@@ -1,5 +1,6 @@
 package main;
 
+import java.util.Random;
 import java.util.Scanner;
 
 //Litao Chen		2017.05.30
@@ -8,13 +9,16 @@ import java.util.Scanner;
 // easy:		10				8X8	
 // hard:		40				16X16	
 // expert:		99				16X30
+// infinite:	40 per 16X16	no limit
 
 
 //HELP:
 //	The board will show in the terminal 
 //	input row index and column index (with space in between) to open the spot. e.g.: 2 6
 //	add 'f' at the beginning if want to flag the spot. e.g.: f 2 6
+//	on the infinite board the index can be negative. e.g.: -3 120
 //	press 's' to ask AI give suggestions for next move
+//	press 'l' and a time in ms to let AI look ahead when guessing. e.g.: l 200 ('l 0' to turn off)
 
 
 
@@ -27,14 +31,15 @@ public class MineSweeper {
 		help();
 		
 		int level = getDifficulty(sc) - 1;
-		Board newBoard = new Board(level);
+		Board newBoard = newBoard(level);
 		newBoard.printBoard(0);
 
-		String pattern = "^[ ]*[sSfF]?[ ]*[0-9]{1,2}[ ]+[0-9]{1,2}[ ]*$";
+		String pattern = "^[ ]*[sSfF]?[ ]*-?[0-9]{1,9}[ ]+-?[0-9]{1,9}[ ]*$";
 		String help = "^[ ]*[hH]{1}[ ]*$";
 		String suggest = "^[ ]*[sS]{1}[ ]*$";
 		String restart = "^[ ]*[rR]{1}[ ]*$";
 		String autoSolve = "^[ ]*[aA]{1}[ ]*$";
+		String lookahead = "^[ ]*[lL]{1}[ ]*[0-9]{1,5}[ ]*$";
 		
 		while(sc.hasNextLine()) {
 			String input = sc.nextLine();
@@ -45,18 +50,21 @@ public class MineSweeper {
 				newBoard.printBoard(2);
 			
 			else if(input.matches(restart))
-				restart(newBoard, sc);
+				newBoard = restart(newBoard, sc);
 			
 			else if(input.matches(autoSolve))
 				newBoard.toggleAutoSolve();
 			
+			else if(input.matches(lookahead))
+				newBoard.setLookahead(Integer.parseInt(input.trim().substring(1).trim()));
+			
 			else if(input.matches(pattern)) {
 				processInput(input, cmd);
 				int result = newBoard.updateBoard(cmd[0], cmd[1], cmd[2]);
 				switch(result){
 				case -1: 	System.out.println("Invalid position. please retry."); break; 
-				case 1:		System.out.println("Congrat! You win!"); restart(newBoard, sc); break;
-				case 2:		System.out.println("Sorry, You lost!"); restart(newBoard, sc); break;
+				case 1:		System.out.println("Congrat! You win!"); newBoard = restart(newBoard, sc); break;
+				case 2:		System.out.println("Sorry, You lost!"); newBoard = restart(newBoard, sc); break;
 				default:	;
 				}
 			}
@@ -73,9 +81,11 @@ public class MineSweeper {
 			"- The board will show in the terminal\n" + 
 			"- input row index and column index (with space in between) to open the spot. e.g.: 2 6.\n" +
 			"- add 'f' at the beginning if want to flag the spot. e.g.: f 2 6.\n"+
+			"- on the infinite board the index can be negative. e.g.: -3 120.\n"+
 			"- press 's' to ask AI give suggestions for next move.\n" +
 			"- press 'r' to restart the game.\n" +
-			"- press 'a' to toggle AI auto-solve. By default auso-solve is off.\n"
+			"- press 'a' to toggle AI auto-solve. By default auso-solve is off.\n" +
+			"- press 'l' and a time in ms to let AI look ahead when guessing. e.g.: l 200. 'l 0' to turn off.\n"
 				);
 	}
 	
@@ -95,23 +105,30 @@ public class MineSweeper {
 		}
 	}
 
+	// new board of the selected difficulty, level 3 for the infinite board
+	static Board newBoard(int level) {
+		if(level == 3)
+			return new ChunkedBoard(new Random().nextLong());
+		return new Board(level);
+	}
+	
 	// ask user to select difficulty
 	static int getDifficulty(Scanner input) {
-		System.out.println("Please choose the difficulty by number 1, 2 or 3:");
-		System.out.println("1:\teasy\n2:\thard\n3:\texpert");
+		System.out.println("Please choose the difficulty by number 1, 2, 3 or 4:");
+		System.out.println("1:\teasy\n2:\thard\n3:\texpert\n4:\tinfinite");
 		
 		int level = 0;
 		while(true) {
 			if( !input.hasNextInt() ) {
-				System.out.println("Please choose difficulty by number 1, 2 or 3");
+				System.out.println("Please choose difficulty by number 1, 2, 3 or 4");
 				input.nextLine();
 				continue;
 			}
 			
 			level = input.nextInt();
 
-			if(level != 1 && level != 2 && level != 3) {
-				System.out.println("Please choose difficulty by number 1, 2 or 3");
+			if(level < 1 || level > 4) {
+				System.out.println("Please choose difficulty by number 1, 2, 3 or 4");
 				input.nextLine();
 				continue;
 			}
@@ -122,8 +139,8 @@ public class MineSweeper {
 		return level;
 	}
 
-	// ask if user want to restart
-	static void restart(Board board, Scanner input) {
+	// ask if user want to restart, return the new board
+	static Board restart(Board board, Scanner input) {
 		System.out.println("Restart the game? y/n");
 		String pattern = "^[yYnN]{1}$";
 
@@ -133,9 +150,12 @@ public class MineSweeper {
 			if(answer.matches(pattern)) {
 				if(answer.equals("y") || answer.equals("Y")) {
 					level = getDifficulty(input)-1; 
-					board.initBoard(level);
-					board.printBoard(0);
-					break;
+					board.cancelAI();  // the evaluation of the old game is no longer needed
+					Board next = newBoard(level);
+					next.autoSolve = board.autoSolve;
+					next.lookaheadBudget = board.lookaheadBudget;
+					next.printBoard(0);
+					return next;
 				}
 				else
 					System.exit(0);
@@ -143,6 +163,7 @@ public class MineSweeper {
 			else
 				System.out.println("Please press y/n to select.");
 		}
+		return board;
 	}	
 	
 }
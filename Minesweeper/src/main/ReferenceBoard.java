@@ -0,0 +1,258 @@
+package main;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// ***************************************************************************************************************
+// Slow but plainly correct version of the board, to check Board and its AI against.
+// Nothing is kept up to date move by move: hints, blind spots and chances are counted again from the mines
+// and the opened spots every time they are asked for.
+// Chance of mines:
+// - every opened spot says: the unvisited spots around it hold exactly 'hint' mines.
+// - every way to put mines on the unknown spots next to opened spots is tried (up to MAX_UNKNOWN of them),
+//   dropping a partial layout as soon as one opened spot can no longer be right.
+// - the other unknown spots have no hint on them, so a layout with k mines stands for
+//   C(others, mines - k) full boards. The chance of a spot is its share of all full boards.
+// **************************************************************************************************************
+
+class ReferenceBoard {
+	// most unknown spots next to opened spots the chances are worked out for
+	static final int MAX_UNKNOWN = 30;
+
+	private final boolean[][] mine;
+	private final boolean[][] visited;
+	private final boolean[][] flagged;
+	private final int mines;
+
+	ReferenceBoard(boolean[][] mineMap) {
+		mine = new boolean[mineMap.length][];
+		int count = 0;
+		for(int i = 0; i < mineMap.length; i++) {
+			mine[i] = mineMap[i].clone();
+			for(boolean m : mine[i])
+				if(m)
+					count++;
+		}
+		mines = count;
+		visited = new boolean[rows()][columns()];
+		flagged = new boolean[rows()][columns()];
+	}
+
+	int rows() {
+		return mine.length;
+	}
+
+	int columns() {
+		return mine[0].length;
+	}
+
+	// same return value as Board.updateBoard: 0 OK, 1 win, 2 game over
+	int open(int rowIndex, int colIndex) {
+		if(mine[rowIndex][colIndex])
+			return 2;
+
+		// flood fill from the spot, going on only from spots without mines around
+		ArrayDeque<int[]> queue = new ArrayDeque<>();
+		queue.add(new int[] {rowIndex, colIndex});
+		while(!queue.isEmpty()) {
+			int[] spot = queue.poll();
+			if(visited[spot[0]][spot[1]])
+				continue;
+			visited[spot[0]][spot[1]] = true;
+			if(hint(spot[0], spot[1]) == 0)
+				for(int[] next : neighbours(spot[0], spot[1]))
+					if(!visited[next[0]][next[1]])
+						queue.add(next);
+		}
+		return spotsLeft() == 0 ? 1 : 0;
+	}
+
+	void flag(int rowIndex, int colIndex) {
+		flagged[rowIndex][colIndex] = !flagged[rowIndex][colIndex];
+	}
+
+	boolean isVisited(int rowIndex, int colIndex) {
+		return visited[rowIndex][colIndex];
+	}
+
+	boolean isFlagged(int rowIndex, int colIndex) {
+		return flagged[rowIndex][colIndex];
+	}
+
+	boolean isMine(int rowIndex, int colIndex) {
+		return mine[rowIndex][colIndex];
+	}
+
+	// number of mines around a spot
+	int hint(int rowIndex, int colIndex) {
+		int hint = 0;
+		for(int[] spot : neighbours(rowIndex, colIndex))
+			if(mine[spot[0]][spot[1]])
+				hint++;
+		return hint;
+	}
+
+	// number of unvisited spots around a spot
+	int blindSpots(int rowIndex, int colIndex) {
+		int blind = 0;
+		for(int[] spot : neighbours(rowIndex, colIndex))
+			if(!visited[spot[0]][spot[1]])
+				blind++;
+		return blind;
+	}
+
+	// safe spots not opened yet
+	int spotsLeft() {
+		int left = 0;
+		for(int i = 0; i < rows(); i++)
+			for(int j = 0; j < columns(); j++)
+				if(!mine[i][j] && !visited[i][j])
+					left++;
+		return left;
+	}
+
+	// exact chance (0 - 1) of a mine for each unvisited spot, NaN for visited spots.
+	// null if there are too many unknown spots next to opened spots
+	double[][] mineChance() {
+		// unknown spots next to opened spots, and how many unknown spots are not
+		List<int[]> unknown = new ArrayList<>();
+		int others = 0;
+		for(int i = 0; i < rows(); i++) {
+			for(int j = 0; j < columns(); j++) {
+				if(visited[i][j])
+					continue;
+				boolean nextToOpened = false;
+				for(int[] spot : neighbours(i, j))
+					nextToOpened |= visited[spot[0]][spot[1]];
+				if(nextToOpened)
+					unknown.add(new int[] {i, j});
+				else
+					others++;
+			}
+		}
+		if(unknown.size() > MAX_UNKNOWN)
+			return null;
+
+		Enumeration e = new Enumeration(unknown, others);
+		e.search(0, 0);
+		if(e.total == 0)
+			throw new IllegalStateException("No mine layout fits the opened spots");
+
+		double[][] chance = new double[rows()][columns()];
+		for(int i = 0; i < rows(); i++)
+			for(int j = 0; j < columns(); j++)
+				chance[i][j] = visited[i][j] ? Double.NaN : e.otherWeight / e.total;
+		for(int k = 0; k < unknown.size(); k++)
+			chance[unknown.get(k)[0]][unknown.get(k)[1]] = e.mineWeight[k] / e.total;
+		return chance;
+	}
+
+	// try all mine layouts of the unknown spots next to opened spots
+	private class Enumeration {
+		final List<int[]> unknown;
+		final int others;
+		final boolean[] layout;
+		final int[][] index;  // index of each unknown spot in the list, -1 for other spots
+		final int[][] left;   // mines still to place around each opened spot
+
+		// number of full boards: in all, with a mine at each unknown spot, and sum over the other spots
+		double total;
+		final double[] mineWeight;
+		double otherWeight;
+
+		Enumeration(List<int[]> unknown, int others) {
+			this.unknown = unknown;
+			this.others = others;
+			layout = new boolean[unknown.size()];
+			mineWeight = new double[unknown.size()];
+			index = new int[rows()][columns()];
+			left = new int[rows()][columns()];
+			for(int i = 0; i < rows(); i++) {
+				for(int j = 0; j < columns(); j++) {
+					index[i][j] = -1;
+					if(visited[i][j])
+						left[i][j] = hint(i, j);
+				}
+			}
+			for(int k = 0; k < unknown.size(); k++)
+				index[unknown.get(k)[0]][unknown.get(k)[1]] = k;
+		}
+
+		// decide spot k and the ones after it, 'placed' mines so far
+		void search(int k, int placed) {
+			if(placed > mines)
+				return;
+			if(k == unknown.size()) {
+				count(placed);
+				return;
+			}
+			int[] spot = unknown.get(k);
+			for(int m = 0; m <= 1; m++) {
+				layout[k] = m == 1;
+				boolean fits = true;
+				for(int[] opened : neighbours(spot[0], spot[1])) {
+					if(!visited[opened[0]][opened[1]])
+						continue;
+					left[opened[0]][opened[1]] -= m;
+					fits &= fits(opened[0], opened[1], k);
+				}
+				if(fits)
+					search(k + 1, placed + m);
+				for(int[] opened : neighbours(spot[0], spot[1]))
+					if(visited[opened[0]][opened[1]])
+						left[opened[0]][opened[1]] += m;
+			}
+			layout[k] = false;
+		}
+
+		// can the opened spot still get its mines from the unknown spots after spot k
+		private boolean fits(int rowIndex, int colIndex, int k) {
+			int undecided = 0;
+			for(int[] spot : neighbours(rowIndex, colIndex))
+				if(index[spot[0]][spot[1]] > k)
+					undecided++;
+			return left[rowIndex][colIndex] >= 0 && left[rowIndex][colIndex] <= undecided;
+		}
+
+		// a full layout of the unknown spots, the rest of the mines go to the other spots
+		private void count(int placed) {
+			int rest = mines - placed;
+			if(rest > others)
+				return;
+			for(int i = 0; i < rows(); i++)  // every opened spot got its mines, checked once more in full
+				for(int j = 0; j < columns(); j++)
+					if(visited[i][j] && left[i][j] != 0)
+						return;
+			double weight = choose(others, rest);
+			total += weight;
+			for(int k = 0; k < layout.length; k++)
+				if(layout[k])
+					mineWeight[k] += weight;
+			if(others > 0)
+				otherWeight += weight * ((double) rest / others);  // exactly 0 or weight at the ends
+		}
+	}
+
+	static double choose(int n, int k) {
+		double c = 1;
+		for(int i = 1; i <= k; i++)
+			c = c * (n - k + i) / i;
+		return c;
+	}
+
+	// spots around a spot inside the board
+	List<int[]> neighbours(int rowIndex, int colIndex) {
+		List<int[]> spots = new ArrayList<>(8);
+		for(int i = rowIndex-1; i <= rowIndex+1; i++) {
+			if(i < 0 || i >= rows())  //out of boundary
+				continue;
+			for(int j = colIndex-1; j <= colIndex+1; j++) {
+				if(j < 0 || j >= columns() || (i == rowIndex && j == colIndex))
+					continue;
+				spots.add(new int[] {i, j});
+			}
+		}
+		return spots;
+	}
+}
@@ -0,0 +1,455 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// ***************************************************************************************************************
+// A/B harness for the AI. Plays the same seeded boards with two or more solver strategies and compares them.
+// - corpus: "level seed" per line, loaded from a file or generated from one master seed.
+// - every strategy plays every board of the corpus, one level of one strategy after another.
+//   The games of a level run in parallel.
+// - report per level and strategy: win rate with 95% interval, per-move latency percentiles and throughput
+//   (moves per wall-clock second of its games),
+//   and the win rate difference of each strategy to the first one, with a 95% interval over paired boards.
+// - the report is written as JSON, with the result of every board, so it can be checked by a script.
+// - baseline: to see if a change to the AI made it better or worse, run the harness before the change
+//   (--out before.json), then after it with --baseline before.json. The same boards are played again,
+//   each strategy is paired with the one of the same name in the baseline, board by board.
+//   The exit code is 1 if a win rate dropped beyond its 95% interval.
+//
+// usage: java main.SolverHarness [--games 200] [--seed 1] [--levels 0,1,2] [--lookahead 0]
+//                                [--threads n] [--corpus file] [--save-corpus file] [--out file]
+//                                [--baseline file] [--export file]
+// each lookahead budget (ms) is one strategy, 0 for the plain AI. The default is the plain AI only, with the
+// games in parallel on all cores; compare with the lookahead by e.g. --lookahead 0,100.
+// the lookahead stops on a time budget and shares one thread pool with all games, so its results depend on
+// the speed and load of the machine. With a budget above 0, games run one at a time unless --threads is given.
+// --export writes every decision of every game for model training, see DecisionExporter.
+// **************************************************************************************************************
+
+public class SolverHarness {
+
+	// a solver strategy: how the board is set up and how the next move is picked
+	interface Strategy {
+		String name();
+
+		void setUp(Board board);
+
+		// next spot to open: [row, column], null if the strategy has no idea
+		int[] nextMove(Board board);
+	}
+
+	// the AI of the board, with the given lookahead budget
+	static Strategy aiStrategy(int lookahead) {
+		return new Strategy() {
+			public String name() {
+				return lookahead == 0 ? "ai" : "lookahead-" + lookahead + "ms";
+			}
+
+			public void setUp(Board board) {
+				board.lookaheadBudget = lookahead;
+			}
+
+			public int[] nextMove(Board board) {
+				board.awaitAI();
+				int[] spot = board.getSafeSpot();
+				if(spot[0] >= board.rows() || spot[1] >= board.columns()
+						|| board.isVisited(spot[0], spot[1]) || board.getRisk(spot[0], spot[1]) == 100)
+					return null;  // no suggestion (first move) or an old one
+				return spot;
+			}
+		};
+	}
+
+	// result of one game
+	static class Game {
+		boolean win;
+		long[] latency;  // ns per move
+		int moves;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		int games = 200;
+		long seed = 1;
+		int[] levels = {0, 1, 2};
+		int[] budgets = {0};
+		int threads = 0;  // 0: not given
+		String corpusFile = null;
+		String baselineFile = null;
+		String saveCorpus = null;
+		String out = "harness-results.json";
+		String exportFile = null;
+
+		for(int i = 0; i < args.length; i++) {
+			String value = i + 1 < args.length ? args[i+1] : "";
+			switch(args[i]) {
+			case "--games":			games = Integer.parseInt(value); i++; break;
+			case "--seed":			seed = Long.parseLong(value); i++; break;
+			case "--levels":		levels = parseList(value); i++; break;
+			case "--lookahead":		budgets = parseList(value); i++; break;
+			case "--threads":		threads = Integer.parseInt(value); i++; break;
+			case "--corpus":		corpusFile = value; i++; break;
+			case "--save-corpus":	saveCorpus = value; i++; break;
+			case "--out":			out = value; i++; break;
+			case "--baseline":		baselineFile = value; i++; break;
+			case "--export":		exportFile = value; i++; break;
+			default:
+				System.out.println("Unknown option: " + args[i]);
+				System.out.println("Options: --games --seed --levels --lookahead --threads "
+						+ "--corpus --save-corpus --out --baseline --export");
+				return;
+			}
+		}
+		if(threads == 0)  // timed strategies are only repeatable without other games running
+			threads = Arrays.stream(budgets).anyMatch(b -> b > 0) ? 1 : Runtime.getRuntime().availableProcessors();
+
+		Map<String, Boolean> baseline = baselineFile != null ? loadBaseline(baselineFile) : null;
+		long[][] corpus;
+		if(corpusFile != null)
+			corpus = loadCorpus(corpusFile);
+		else if(baseline != null)  // the boards of the baseline
+			corpus = baselineCorpus(baselineFile);
+		else
+			corpus = makeCorpus(levels, games, seed);
+		if(saveCorpus != null)
+			saveCorpus(corpus, saveCorpus);
+
+		List<Strategy> strategies = new ArrayList<>();
+		for(int budget : budgets)
+			strategies.add(aiStrategy(budget));
+
+		DecisionExporter exporter = exportFile != null ? new DecisionExporter(Paths.get(exportFile), threads) : null;
+
+		// play all the games: [strategy][board], the boards of one level of one strategy at a time,
+		// so each gets its own wall-clock time: [strategy][level]
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Game[][] results = new Game[strategies.size()][corpus.length];
+		double[][] levelSeconds = new double[strategies.size()][Board.levelCount()];
+		int[] corpusLevels = Arrays.stream(corpus).mapToInt(b -> (int) b[0]).distinct().sorted().toArray();
+		long start = System.nanoTime();
+		for(int s = 0; s < strategies.size(); s++) {
+			Strategy strategy = strategies.get(s);
+			int index = s;
+			for(int level : corpusLevels) {
+				long levelStart = System.nanoTime();
+				List<Future<Game>> futures = new ArrayList<>();
+				for(long[] board : corpus)
+					if(board[0] == level)
+						futures.add(pool.submit(() -> play(strategy, index, level, board[1], exporter)));
+				for(int b = 0, f = 0; b < corpus.length; b++)
+					if(corpus[b][0] == level)
+						results[s][b] = futures.get(f++).get();
+				levelSeconds[s][level] = (System.nanoTime() - levelStart) / 1e9;
+			}
+		}
+		double wallSeconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+
+		if(exporter != null) {
+			exporter.close();
+			wallSeconds = (System.nanoTime() - start) / 1e9;  // the rest of the file is part of the cost
+			System.out.printf(Locale.ROOT, "%d decisions written to %s, export took %.3f s of %.3f s wall time (%.1f%%)%n",
+					exporter.getDecisions(), exportFile, exporter.getBusySeconds(), wallSeconds,
+					exporter.getBusySeconds() / wallSeconds * 100);
+		}
+
+		boolean worse;
+		try(PrintWriter json = new PrintWriter(Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8))) {
+			worse = report(strategies, corpus, results, levelSeconds, wallSeconds, baseline, json);
+		}
+		System.out.println("Results written to " + out);
+		if(worse) {
+			System.out.println("Win rate dropped compared to " + baselineFile);
+			System.exit(1);
+		}
+	}
+
+	// play one game to the end, and export the decisions if there is an exporter
+	static Game play(Strategy strategy, int strategyIndex, int level, long seed, DecisionExporter exporter)
+			throws IOException {
+		Board board = new Board(level, seed);
+		board.quiet = true;
+		strategy.setUp(board);
+		// for moves the strategy can not decide, same for every strategy but not the same numbers as the mines
+		Random random = new Random(new Random(seed).nextLong());
+
+		Game game = new Game();
+		long[] latency = new long[board.rows() * board.columns()];
+		while(true) {
+			long start = System.nanoTime();
+			int[] move = strategy.nextMove(board);
+			if(move == null)
+				move = randomMove(board, random);
+
+			if(exporter != null)  // part of the move latency, the export is not free
+				exporter.record(board, seed, level, strategyIndex, game.moves);
+
+			int result = board.updateBoard(move[0], move[1], 0);
+			latency[game.moves++] = System.nanoTime() - start;
+
+			if(result == 1 || result == 2 || result == -1) {
+				game.win = result == 1;
+				break;
+			}
+		}
+		game.latency = Arrays.copyOf(latency, game.moves);
+		return game;
+	}
+
+	// a random unvisited spot which is not a known mine
+	static int[] randomMove(Board board, Random random) {
+		List<int[]> spots = new ArrayList<>();
+		for(int i = 0; i < board.rows(); i++)
+			for(int j = 0; j < board.columns(); j++)
+				if(!board.isVisited(i, j) && board.getRisk(i, j) != 100)
+					spots.add(new int[] {i, j});
+		if(spots.isEmpty())  // only known mines left, the game is lost anyway
+			for(int i = 0; i < board.rows(); i++)
+				for(int j = 0; j < board.columns(); j++)
+					if(!board.isVisited(i, j))
+						spots.add(new int[] {i, j});
+		return spots.get(random.nextInt(spots.size()));
+	}
+
+	// write the report as JSON and a short summary to the terminal.
+	// levelSeconds: wall-clock time of the games of each level, [strategy][level].
+	// baseline: win of each board from an earlier run (see baselineKey), null if there is none.
+	// return: a win rate dropped beyond its 95% interval compared to the baseline
+	static boolean report(List<Strategy> strategies, long[][] corpus, Game[][] results, double[][] levelSeconds,
+			double wallSeconds, Map<String, Boolean> baseline, PrintWriter json) {
+		boolean worse = false;
+		json.println("{");
+		json.printf(Locale.ROOT, "  \"boards\": %d,%n", corpus.length);
+		json.printf(Locale.ROOT, "  \"wallSeconds\": %.3f,%n", wallSeconds);
+		json.println("  \"levels\": [");
+
+		int[] levels = Arrays.stream(corpus).mapToInt(b -> (int) b[0]).distinct().sorted().toArray();
+		for(int l = 0; l < levels.length; l++) {
+			int level = levels[l];
+			StringBuilder seeds = new StringBuilder();
+			for(long[] board : corpus)
+				if(board[0] == level)
+					seeds.append(seeds.length() == 0 ? "" : ", ").append(board[1]);
+			json.printf(Locale.ROOT, "    {\"level\": %d, \"seeds\": [%s], \"strategies\": [%n", level, seeds);
+			System.out.printf("Level %d:%n", level);
+
+			for(int s = 0; s < strategies.size(); s++) {
+				String name = strategies.get(s).name();
+				int n = 0, wins = 0, moves = 0;
+				List<long[]> latencies = new ArrayList<>();
+				List<Integer> diffs = new ArrayList<>();
+				List<Integer> baselineDiffs = new ArrayList<>();
+				StringBuilder boardResults = new StringBuilder();
+				for(int b = 0; b < corpus.length; b++) {
+					if(corpus[b][0] != level)
+						continue;
+					Game game = results[s][b];
+					n++;
+					wins += game.win ? 1 : 0;
+					moves += game.moves;
+					latencies.add(game.latency);
+					boardResults.append(game.win ? '1' : '0');
+
+					diffs.add((game.win ? 1 : 0) - (results[0][b].win ? 1 : 0));  // paired on the same board
+					Boolean before = baseline == null ? null : baseline.get(baselineKey(level, name, corpus[b][1]));
+					if(before != null)
+						baselineDiffs.add((game.win ? 1 : 0) - (before ? 1 : 0));
+				}
+				long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+				double rate = n == 0 ? 0 : (double) wins / n;
+				double[] wilson = wilson(wins, n);
+				double[] diff = pairedDiff(diffs);
+				double movesPerSecond = levelSeconds[s][level] == 0 ? 0 : moves / levelSeconds[s][level];
+
+				json.printf(Locale.ROOT, "      {\"name\": \"%s\", \"games\": %d, \"wins\": %d, \"winRate\": %.4f, "
+						+ "\"winRateLow\": %.4f, \"winRateHigh\": %.4f,%n",
+						name, n, wins, rate, wilson[0], wilson[1]);
+				json.printf(Locale.ROOT, "       \"diffToFirst\": %.4f, \"diffLow\": %.4f, \"diffHigh\": %.4f,%n",
+						diff[0], diff[1], diff[2]);
+				if(!baselineDiffs.isEmpty()) {
+					double[] change = pairedDiff(baselineDiffs);
+					json.printf(Locale.ROOT, "       \"baselineGames\": %d, \"diffToBaseline\": %.4f, "
+							+ "\"baselineLow\": %.4f, \"baselineHigh\": %.4f,%n",
+							baselineDiffs.size(), change[0], change[1], change[2]);
+				}
+				json.printf(Locale.ROOT, "       \"results\": \"%s\",%n", boardResults);
+				json.printf(Locale.ROOT, "       \"moves\": %d, \"seconds\": %.3f, \"movesPerSecond\": %.1f, "
+						+ "\"latencyMicros\": {\"p50\": %.1f, \"p90\": %.1f, \"p99\": %.1f, \"max\": %.1f}}%s%n",
+						moves, levelSeconds[s][level], movesPerSecond, percentile(all, 50), percentile(all, 90),
+						percentile(all, 99), percentile(all, 100), s + 1 < strategies.size() ? "," : "");
+
+				System.out.printf(Locale.ROOT, "  %-16s win %5.1f%% [%5.1f, %5.1f]  diff %+5.1f%% [%+5.1f, %+5.1f]  "
+						+ "p50 %8.1fus  p99 %8.1fus  %8.0f moves/s%n",
+						name, rate * 100, wilson[0] * 100, wilson[1] * 100,
+						diff[0] * 100, diff[1] * 100, diff[2] * 100,
+						percentile(all, 50), percentile(all, 99), movesPerSecond);
+				if(!baselineDiffs.isEmpty()) {
+					double[] change = pairedDiff(baselineDiffs);
+					boolean dropped = change[2] < 0;
+					worse |= dropped;
+					System.out.printf(Locale.ROOT, "  %-16s vs baseline %+5.1f%% [%+5.1f, %+5.1f] on %d boards%s%n",
+							"", change[0] * 100, change[1] * 100, change[2] * 100, baselineDiffs.size(),
+							dropped ? "  WORSE" : "");
+				}
+			}
+			json.printf(Locale.ROOT, "    ]}%s%n", l + 1 < levels.length ? "," : "");
+		}
+		json.println("  ]");
+		json.println("}");
+		return worse;
+	}
+
+	// mean of paired win differences (-1, 0, 1) with its 95% interval: [mean, low, high]
+	static double[] pairedDiff(List<Integer> diffs) {
+		int n = diffs.size();
+		double sum = 0, squares = 0;
+		for(int d : diffs) {
+			sum += d;
+			squares += d * d;
+		}
+		double mean = n == 0 ? 0 : sum / n;
+		double error = n < 2 ? 0 : 1.96 * Math.sqrt((squares - n * mean * mean) / (n - 1) / n);
+		return new double[] {mean, mean - error, mean + error};
+	}
+
+	static String baselineKey(long level, String strategy, long seed) {
+		return level + " " + strategy + " " + seed;
+	}
+
+	// results of every board in a report written by this harness, by baselineKey
+	static Map<String, Boolean> loadBaseline(String file) throws IOException {
+		Map<String, Boolean> baseline = new HashMap<>();
+		String text = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+		for(String[] level : baselineLevels(text)) {
+			String[] seeds = level[1].split(",\\s*");
+			Matcher strategy = STRATEGY_RESULTS.matcher(level[2]);
+			while(strategy.find()) {
+				String wins = strategy.group(2);
+				if(wins.length() != seeds.length)
+					throw new IOException("Results do not match the boards in " + file);
+				for(int b = 0; b < seeds.length; b++)
+					baseline.put(baselineKey(Long.parseLong(level[0]), strategy.group(1), Long.parseLong(seeds[b])),
+							wins.charAt(b) == '1');
+			}
+		}
+		if(baseline.isEmpty())
+			throw new IOException("No board results in " + file);
+		return baseline;
+	}
+
+	// boards of a baseline report: [level, seed]
+	static long[][] baselineCorpus(String file) throws IOException {
+		String text = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+		List<long[]> corpus = new ArrayList<>();
+		for(String[] level : baselineLevels(text)) {
+			int l = Integer.parseInt(level[0]);
+			checkLevel(l);
+			for(String seed : level[1].split(",\\s*"))
+				corpus.add(new long[] {l, Long.parseLong(seed)});
+		}
+		return corpus.toArray(new long[0][]);
+	}
+
+	private static final Pattern LEVEL = Pattern.compile("\\{\"level\": (\\d+), \"seeds\": \\[([^\\]]*)\\]");
+	private static final Pattern STRATEGY_RESULTS =
+			Pattern.compile("\"name\": \"([^\"]+)\"[^}]*?\"results\": \"([01]*)\"", Pattern.DOTALL);
+
+	// levels of a report: [level, seeds, text of its strategies]
+	private static List<String[]> baselineLevels(String text) {
+		List<String[]> levels = new ArrayList<>();
+		Matcher level = LEVEL.matcher(text);
+		boolean found = level.find();
+		while(found) {
+			String number = level.group(1);
+			String seeds = level.group(2);
+			int start = level.end();
+			found = level.find();
+			levels.add(new String[] {number, seeds, text.substring(start, found ? level.start() : text.length())});
+		}
+		return levels;
+	}
+
+	// 95% Wilson interval of a win rate: [low, high]
+	static double[] wilson(int wins, int n) {
+		if(n == 0)
+			return new double[] {0, 0};
+		double z = 1.96;
+		double p = (double) wins / n;
+		double center = (p + z*z / (2*n)) / (1 + z*z / n);
+		double half = z * Math.sqrt(p*(1 - p) / n + z*z / (4.0*n*n)) / (1 + z*z / n);
+		return new double[] {Math.max(0, center - half), Math.min(1, center + half)};
+	}
+
+	// percentile of sorted latencies in microseconds
+	static double percentile(long[] sorted, int percent) {
+		if(sorted.length == 0)
+			return 0;
+		int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1000.0;
+	}
+
+	// boards for each level: [level, seed]
+	static long[][] makeCorpus(int[] levels, int games, long seed) {
+		Random random = new Random(seed);
+		long[][] corpus = new long[levels.length * games][];
+		int pos = 0;
+		for(int level : levels) {
+			checkLevel(level);
+			for(int i = 0; i < games; i++)
+				corpus[pos++] = new long[] {level, random.nextLong()};
+		}
+		return corpus;
+	}
+
+	// read corpus file: "level seed" per line, '#' for comments
+	static long[][] loadCorpus(String file) throws IOException {
+		List<long[]> corpus = new ArrayList<>();
+		try(BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] token = line.split("\\s+");
+				int level = Integer.parseInt(token[0]);
+				checkLevel(level);
+				corpus.add(new long[] {level, Long.parseLong(token[1])});
+			}
+		}
+		return corpus.toArray(new long[0][]);
+	}
+
+	static void saveCorpus(long[][] corpus, String file) throws IOException {
+		try(PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8))) {
+			writer.println("# level seed");
+			for(long[] board : corpus)
+				writer.println(board[0] + " " + board[1]);
+		}
+	}
+
+	static void checkLevel(int level) {
+		if(level < 0 || level >= Board.levelCount())
+			throw new IllegalArgumentException("No such level: " + level);
+	}
+
+	static int[] parseList(String s) {
+		return Arrays.stream(s.split(",")).mapToInt(Integer::parseInt).toArray();
+	}
+}